@@ -88,6 +88,8 @@ DROP TABLE IF EXISTS `tb_seckill_voucher`;
 CREATE TABLE `tb_seckill_voucher`  (
   `voucher_id` bigint(20) UNSIGNED NOT NULL COMMENT '关联的优惠券的id',
   `stock` int(8) NOT NULL COMMENT '库存',
+  `stock_mode` varchar(16) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NULL DEFAULT NULL COMMENT '秒杀库存存储策略 list：库存队列；counter：计数器；为空时使用默认策略',
+  `stock_buckets` int(4) NULL DEFAULT NULL COMMENT '秒杀库存桶数量，为空或不大于1时不分桶',
   `create_time` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
   `begin_time` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '生效时间',
   `end_time` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '失效时间',
@@ -275,11 +277,26 @@ CREATE TABLE `tb_voucher_order`  (
   `use_time` timestamp NULL DEFAULT NULL COMMENT '核销时间',
   `refund_time` timestamp NULL DEFAULT NULL COMMENT '退款时间',
   `update_time` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
-  PRIMARY KEY (`id`) USING BTREE
+  PRIMARY KEY (`id`) USING BTREE,
+  UNIQUE INDEX `uk_user_voucher`(`user_id`, `voucher_id`) USING BTREE,
+  INDEX `idx_voucher`(`voucher_id`) USING BTREE
 ) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_general_ci ROW_FORMAT = Compact;
 
 -- ----------------------------
 -- Records of tb_voucher_order
 -- ----------------------------
 
+-- ----------------------------
+-- Table structure for tb_voucher_order_0 ~ tb_voucher_order_3
+-- 订单分表(按用户ID取模)，数量与 seckill.order.sharding.table-count 一致
+-- ----------------------------
+DROP TABLE IF EXISTS `tb_voucher_order_0`;
+CREATE TABLE `tb_voucher_order_0` LIKE `tb_voucher_order`;
+DROP TABLE IF EXISTS `tb_voucher_order_1`;
+CREATE TABLE `tb_voucher_order_1` LIKE `tb_voucher_order`;
+DROP TABLE IF EXISTS `tb_voucher_order_2`;
+CREATE TABLE `tb_voucher_order_2` LIKE `tb_voucher_order`;
+DROP TABLE IF EXISTS `tb_voucher_order_3`;
+CREATE TABLE `tb_voucher_order_3` LIKE `tb_voucher_order`;
+
 SET FOREIGN_KEY_CHECKS = 1;
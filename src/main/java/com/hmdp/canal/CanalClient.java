@@ -142,7 +142,8 @@ public class CanalClient implements ApplicationRunner, DisposableBean {
             if (entry.getEntryType() == EntryType.ROWDATA) {
                 try {
                     RowChange rowChange = RowChange.parseFrom(entry.getStoreValue());
-                    String tableName = entry.getHeader().getTableName();
+                    // 订单分表按逻辑表处理
+                    String tableName = entry.getHeader().getTableName().replaceFirst("^tb_voucher_order_\\d+$", "tb_voucher_order");
                     String schemaName = entry.getHeader().getSchemaName();
                     EventType eventType = rowChange.getEventType();
 
@@ -4,6 +4,9 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * 缓存配置
  */
@@ -20,6 +23,26 @@ public class CacheConfig {
      * Redis缓存配置
      */
     private RedisCache redis = new RedisCache();
+
+    /**
+     * 缓存加载合并配置
+     */
+    private SingleFlight singleFlight = new SingleFlight();
+
+    /**
+     * 缓存重建租约配置
+     */
+    private Lease lease = new Lease();
+
+    /**
+     * 缓存值编解码配置
+     */
+    private Codec codec = new Codec();
+
+    /**
+     * 提前刷新配置
+     */
+    private RefreshAhead refreshAhead = new RefreshAhead();
     
     /**
      * 本地缓存配置
@@ -57,4 +80,75 @@ public class CacheConfig {
          */
         private long nullTtl = 60;
     }
-} 
\ No newline at end of file
+
+    /**
+     * 缓存加载合并配置
+     * 同一节点上同一个key的并发未命中只由一个线程加载，其他线程等待该线程的结果
+     */
+    @Data
+    public static class SingleFlight {
+        /**
+         * 是否启用
+         */
+        private boolean enabled = true;
+
+        /**
+         * 等待其他线程加载结果的最长时间（毫秒），超时后自行加载
+         */
+        private long waitTimeoutMillis = 3000;
+    }
+
+    /**
+     * 缓存重建租约配置
+     * 第一个未命中的节点持有租约重建缓存，其他节点返回旧值或等待重建完成通知
+     */
+    @Data
+    public static class Lease {
+        /**
+         * 租约时长（毫秒），持有者宕机后最多经过该时间由其他节点接管
+         */
+        private long leaseMillis = 10000;
+
+        /**
+         * 旧值在缓存过期后继续保留的时间（秒），重建期间其他节点直接返回旧值
+         */
+        private long staleSeconds = 300;
+    }
+
+    /**
+     * 缓存值编解码配置
+     */
+    @Data
+    public static class Codec {
+        /**
+         * 默认编解码方式：hutool(原有的JSONUtil实现)、json(Jackson)、smile(Jackson二进制格式，体积更小)
+         * 默认保持hutool，与已有的缓存格式一致；切换为json/smile后，旧格式的缓存解码失败时按hutool格式解码，
+         * 切换后应重新写入店铺等逻辑过期缓存(对每个店铺调用 ShopServiceImpl.saveShop2Redis)，使缓存统一为新格式
+         */
+        private String defaultCodec = "hutool";
+
+        /**
+         * 按类型指定编解码方式，key为类的全限定名
+         */
+        private Map<String, String> types = new HashMap<>();
+    }
+
+    /**
+     * 提前刷新配置
+     * 只对调用 queryWithRefreshAhead 的查询生效，缓存值按普通格式存储；
+     * 店铺详情等逻辑过期的key(预热和缓存同步写入逻辑过期格式)不能直接切换到该模式
+     */
+    @Data
+    public static class RefreshAhead {
+        /**
+         * 是否启用，关闭时按普通多级缓存查询，默认关闭
+         */
+        private boolean enabled = false;
+
+        /**
+         * 刷新比例：本地缓存写入后超过TTL的该比例再被访问时重新加载，
+         * Redis剩余TTL不足 (1 - 该比例) 时刷新
+         */
+        private double refreshRatio = 0.8;
+    }
+}
@@ -2,15 +2,21 @@ package com.hmdp.config;
 
 import com.baomidou.mybatisplus.annotation.DbType;
 import com.baomidou.mybatisplus.extension.plugins.MybatisPlusInterceptor;
+import com.baomidou.mybatisplus.extension.plugins.inner.DynamicTableNameInnerInterceptor;
 import com.baomidou.mybatisplus.extension.plugins.inner.PaginationInnerInterceptor;
+import com.hmdp.utils.VoucherOrderSharding;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 @Configuration
 public class MybatisConfig {
     @Bean
-    public MybatisPlusInterceptor mybatisPlusInterceptor() {
+    public MybatisPlusInterceptor mybatisPlusInterceptor(VoucherOrderSharding voucherOrderSharding) {
         MybatisPlusInterceptor interceptor = new MybatisPlusInterceptor();
+        // 订单分表：逻辑表名替换为当前线程指定的分表，需要在分页插件之前
+        DynamicTableNameInnerInterceptor dynamicTableNameInterceptor = new DynamicTableNameInnerInterceptor();
+        dynamicTableNameInterceptor.setTableNameHandler((sql, tableName) -> voucherOrderSharding.resolveTableName(tableName));
+        interceptor.addInnerInterceptor(dynamicTableNameInterceptor);
         interceptor.addInnerInterceptor(new PaginationInnerInterceptor(DbType.MYSQL));
         return interceptor;
     }
@@ -2,6 +2,7 @@ package com.hmdp.config;
 
 import javax.sql.DataSource;
 
+import com.baomidou.mybatisplus.extension.plugins.MybatisPlusInterceptor;
 import org.apache.ibatis.session.SqlSessionFactory;
 import org.mybatis.spring.SqlSessionFactoryBean;
 import org.mybatis.spring.annotation.MapperScan;
@@ -25,11 +26,14 @@ public class MybatisPlusConfig {
      * 配置SqlSessionFactory
      */
     @Bean
-    public SqlSessionFactory sqlSessionFactory(@Qualifier("dynamicDataSource") DataSource dataSource) throws Exception {
+    public SqlSessionFactory sqlSessionFactory(@Qualifier("dynamicDataSource") DataSource dataSource,
+                                               MybatisPlusInterceptor mybatisPlusInterceptor) throws Exception {
         SqlSessionFactoryBean sqlSessionFactoryBean = new SqlSessionFactoryBean();
         sqlSessionFactoryBean.setDataSource(dataSource);
         sqlSessionFactoryBean.setMapperLocations(
                 new PathMatchingResourcePatternResolver().getResources("classpath*:mapper/*.xml"));
+        // 自定义SqlSessionFactory时插件需要手动注册(分页、订单分表)
+        sqlSessionFactoryBean.setPlugins(mybatisPlusInterceptor);
         return sqlSessionFactoryBean.getObject();
     }
 } 
\ No newline at end of file
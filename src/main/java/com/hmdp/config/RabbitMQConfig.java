@@ -1,13 +1,21 @@
 package com.hmdp.config;
 
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.core.*;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.boot.autoconfigure.amqp.RabbitProperties;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.List;
+
+@Slf4j
 @Configuration
 public class RabbitMQConfig {
 
@@ -17,6 +25,9 @@ public class RabbitMQConfig {
     public static final String ROUTING_KEY = "seckill.order";
     // 队列名称
     public static final String QUEUE_NAME = "seckill.order.queue";
+    // 分区队列名称前缀和路由键前缀，后接分区号
+    public static final String PARTITION_QUEUE_PREFIX = QUEUE_NAME + ".";
+    public static final String PARTITION_ROUTING_KEY_PREFIX = ROUTING_KEY + ".";
 
     // 死信交换机
     public static final String DEAD_LETTER_EXCHANGE = "seckill.dlx";
@@ -31,10 +42,24 @@ public class RabbitMQConfig {
     public static final String VOUCHER_BINLOG_KEY = "binlog.voucher.#";
     public static final String VOUCHER_ORDER_BINLOG_KEY = "binlog.voucher_order.#";
 
+    // 批量消费的监听容器工厂
+    public static final String BATCH_LISTENER_CONTAINER_FACTORY = "batchListenerContainerFactory";
+    // 逐条消费订单的监听容器ID(用于运行时调整并发数和预取数量)
+    public static final String SECKILL_ORDER_LISTENER_ID = "seckillOrderListener";
+    // 逐条消费订单的监听容器工厂
+    public static final String SECKILL_ORDER_CONTAINER_FACTORY = "seckillOrderContainerFactory";
+
     // 缓存更新相关配置
     public static final String CACHE_EXCHANGE = "cache.fanout";
     public static final String LOCAL_CACHE_QUEUE = "local.cache.queue";
     public static final String REDIS_CACHE_QUEUE = "redis.cache.queue";
+    // 每个节点独占的广播队列(匿名队列，节点下线自动删除)
+    public static final String NODE_BROADCAST_QUEUE = "nodeBroadcastQueue";
+
+    // 秒杀结果推送相关配置
+    public static final String SECKILL_RESULT_EXCHANGE = "seckill.result.fanout";
+    // 每个节点独占的秒杀结果队列(匿名队列，节点下线自动删除)
+    public static final String NODE_RESULT_QUEUE = "nodeResultQueue";
 
 
     //1 第一个绑定:秒杀优惠券订单
@@ -67,6 +92,29 @@ public class RabbitMQConfig {
         return BindingBuilder.bind(seckillQueue).to(seckillExchange).with(ROUTING_KEY);
     }
 
+    /**
+     * 声明订单分区队列(启用分区消费时)
+     * 每个分区队列开启单活消费者(x-single-active-consumer)，实例重新分配分区的过程中也只有一个消费者在处理
+     */
+    @Bean
+    public Declarables seckillPartitionDeclarables(SeckillConfig seckillConfig, DirectExchange seckillExchange) {
+        SeckillConfig.Partition partition = seckillConfig.getOrder().getPartition();
+        List<Declarable> declarables = new ArrayList<>();
+        if (!partition.isEnabled()) {
+            return new Declarables(declarables);
+        }
+        for (int i = 0; i < partition.getCount(); i++) {
+            Queue queue = QueueBuilder.durable(PARTITION_QUEUE_PREFIX + i)
+                    .singleActiveConsumer()
+                    .withArgument("x-dead-letter-exchange", DEAD_LETTER_EXCHANGE)
+                    .withArgument("x-dead-letter-routing-key", DEAD_LETTER_ROUTING_KEY)
+                    .build();
+            declarables.add(queue);
+            declarables.add(BindingBuilder.bind(queue).to(seckillExchange).with(PARTITION_ROUTING_KEY_PREFIX + i));
+        }
+        return new Declarables(declarables);
+    }
+
     //2 第二个绑定:死信
     /**
      * 声明死信交换机
@@ -172,6 +220,48 @@ public class RabbitMQConfig {
         return BindingBuilder.bind(redisCacheQueue()).to(cacheExchange());
     }
 
+    /**
+     * 声明节点广播队列
+     * 上面两个队列是多节点共享的(竞争消费)，售罄标记这类需要每个节点都收到的消息走这里
+     */
+    @Bean(NODE_BROADCAST_QUEUE)
+    public Queue nodeBroadcastQueue() {
+        return new AnonymousQueue();
+    }
+
+    /**
+     * 绑定节点广播队列到缓存交换机
+     */
+    @Bean
+    public Binding nodeBroadcastBinding() {
+        return BindingBuilder.bind(nodeBroadcastQueue()).to(cacheExchange());
+    }
+
+    /**
+     * 声明秒杀结果交换机
+     * 订单处理完成后广播到所有节点，由持有用户等待连接的节点推送结果
+     */
+    @Bean
+    public FanoutExchange seckillResultExchange() {
+        return new FanoutExchange(SECKILL_RESULT_EXCHANGE, true, false);
+    }
+
+    /**
+     * 声明节点秒杀结果队列
+     */
+    @Bean(NODE_RESULT_QUEUE)
+    public Queue nodeResultQueue() {
+        return new AnonymousQueue();
+    }
+
+    /**
+     * 绑定节点秒杀结果队列到秒杀结果交换机
+     */
+    @Bean
+    public Binding nodeResultBinding() {
+        return BindingBuilder.bind(nodeResultQueue()).to(seckillResultExchange());
+    }
+
 
 
     /**
@@ -182,6 +272,51 @@ public class RabbitMQConfig {
         return new Jackson2JsonMessageConverter();
     }
 
+    /**
+     * 批量消费的监听容器工厂
+     * 凑满batchSize条或等待receiveTimeout毫秒后，将整批消息一次交给监听方法
+     */
+    @Bean(BATCH_LISTENER_CONTAINER_FACTORY)
+    public SimpleRabbitListenerContainerFactory batchListenerContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory,
+            SeckillConfig seckillConfig) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        // 继承spring.rabbitmq.listener.simple的配置(手动ACK等)
+        configurer.configure(factory, connectionFactory);
+        SeckillConfig.Batch batch = seckillConfig.getOrder().getBatch();
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batch.getSize());
+        factory.setReceiveTimeout(batch.getReceiveTimeout());
+        // 预取数量不能小于批量大小，否则永远凑不满一批
+        factory.setPrefetchCount(batch.getSize());
+        return factory;
+    }
+
+    /**
+     * 逐条消费订单的监听容器工厂
+     * 启用库存扣减合并时，监听方法提交给合并器后不等待结果、也不确认消息，
+     * 每个消费者同时持有的订单数等于预取数量，预取数量不能小于单次合并的最大订单数，否则合并器凑不成批
+     */
+    @Bean(SECKILL_ORDER_CONTAINER_FACTORY)
+    public SimpleRabbitListenerContainerFactory seckillOrderContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory,
+            RabbitProperties rabbitProperties,
+            SeckillConfig seckillConfig) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        // 继承spring.rabbitmq.listener.simple的配置(手动ACK等)
+        configurer.configure(factory, connectionFactory);
+        SeckillConfig.Combiner combiner = seckillConfig.getOrder().getCombiner();
+        Integer prefetch = rabbitProperties.getListener().getSimple().getPrefetch();
+        if (combiner.isEnabled() && (prefetch == null || prefetch < combiner.getMaxBatchSize())) {
+            log.warn("启用库存扣减合并，订单消费者预取数量由{}调整为{}", prefetch, combiner.getMaxBatchSize());
+            factory.setPrefetchCount(combiner.getMaxBatchSize());
+        }
+        return factory;
+    }
+
     /**
      * 配置RabbitTemplate
      */
@@ -193,16 +328,17 @@ public class RabbitMQConfig {
         // 消息发送失败返回到队列中
         rabbitTemplate.setMandatory(true);
 
-        // 消息确认回调
+        // 消息确认回调(发件箱通过CorrelationData的future等待确认，这里只记录日志)
         rabbitTemplate.setConfirmCallback((correlationData, ack, cause) -> {
             if (!ack) {
-                System.out.println("消息发送失败：" + cause);
+                log.error("消息发送失败，correlationId：{}，原因：{}",
+                        correlationData == null ? null : correlationData.getId(), cause);
             }
         });
 
         // 消息返回回调
         rabbitTemplate.setReturnsCallback(returned -> {
-            System.out.println("消息发送失败，返回消息：" + returned.getMessage());
+            log.error("消息发送失败，返回消息：{}", returned.getMessage());
         });
 
         return rabbitTemplate;
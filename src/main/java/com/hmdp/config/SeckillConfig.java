@@ -0,0 +1,598 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 秒杀配置
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "seckill")
+public class SeckillConfig {
+    /**
+     * 订单消费配置
+     */
+    private Order order = new Order();
+
+    /**
+     * 库存配置
+     */
+    private Stock stock = new Stock();
+
+    /**
+     * 秒杀资格判断(Lua脚本)配置
+     */
+    private Admission admission = new Admission();
+
+    /**
+     * 订单消息本地发件箱配置
+     */
+    private Outbox outbox = new Outbox();
+
+    /**
+     * 秒杀结果推送配置
+     */
+    private ResultNotify resultNotify = new ResultNotify();
+
+    /**
+     * 秒杀排队(虚拟等候室)配置
+     */
+    private WaitingRoom waitingRoom = new WaitingRoom();
+
+    /**
+     * 秒杀活动生命周期配置
+     */
+    private Lifecycle lifecycle = new Lifecycle();
+
+    /**
+     * 秒杀Redis状态重建配置
+     */
+    private Rebuild rebuild = new Rebuild();
+
+    /**
+     * 死信订单重放配置
+     */
+    private DlqReplay dlqReplay = new DlqReplay();
+
+    /**
+     * 秒杀请求幂等配置
+     */
+    private Idempotency idempotency = new Idempotency();
+
+    /**
+     * 未支付订单超时取消配置
+     */
+    private UnpaidCancel unpaidCancel = new UnpaidCancel();
+
+    /**
+     * 订单消费配置
+     */
+    @Data
+    public static class Order {
+        /**
+         * 批量消费配置
+         */
+        private Batch batch = new Batch();
+
+        /**
+         * 订单传输方式
+         * 可选值：rabbitmq(RabbitMQ), stream(Redis Stream，秒杀脚本中原子写入)
+         */
+        private String transport = "rabbitmq";
+
+        /**
+         * Redis Stream传输配置
+         */
+        private Stream stream = new Stream();
+
+        /**
+         * 按优惠券分区消费配置
+         */
+        private Partition partition = new Partition();
+
+        /**
+         * 库存扣减合并配置
+         */
+        private Combiner combiner = new Combiner();
+
+        /**
+         * 消费者并发数和预取数量自适应调整配置
+         */
+        private Tuner tuner = new Tuner();
+
+        /**
+         * 订单分表配置
+         */
+        private Sharding sharding = new Sharding();
+    }
+
+    /**
+     * 订单分表配置
+     * 订单按用户ID取模分到 tb_voucher_order_0 ~ tb_voucher_order_{N-1}，
+     * 订单ID的低位记录分表号，按订单ID查询时直接定位分表
+     */
+    @Data
+    public static class Sharding {
+        /**
+         * 是否启用分表
+         */
+        private boolean enabled = false;
+
+        /**
+         * 分表数量(最多64张)
+         */
+        private int tableCount = 4;
+
+        /**
+         * 跨分表查询的并行线程数
+         */
+        private int scatterThreads = 4;
+    }
+
+    /**
+     * 消费者并发数自适应调整配置(AIMD)
+     * 订单落库耗时超过目标值时成倍减少并发数，耗时正常且队列有积压时逐步增加；
+     * 预取数量只在消费者启动时生效，不做调整，仍由 spring.rabbitmq.listener.simple.prefetch 配置
+     */
+    @Data
+    public static class Tuner {
+        /**
+         * 是否启用自适应调整
+         */
+        private boolean enabled = false;
+
+        /**
+         * 调整间隔（毫秒）
+         */
+        private long intervalMillis = 5000;
+
+        /**
+         * 订单落库的目标平均耗时（毫秒），超过后减少并发
+         */
+        private long targetLatencyMillis = 50;
+
+        /**
+         * 每个消费者的积压消息数超过该值时增加并发
+         */
+        private int backlogPerConsumer = 100;
+
+        /**
+         * 最小并发消费者数
+         */
+        private int minConcurrency = 1;
+
+        /**
+         * 最大并发消费者数
+         */
+        private int maxConcurrency = 8;
+
+        /**
+         * 减少时的乘数
+         */
+        private double decreaseFactor = 0.5;
+    }
+
+    /**
+     * 库存扣减合并配置
+     * 消费者收到的订单按优惠券在一个很短的时间窗口内合并，一次事务扣减N个库存
+     */
+    @Data
+    public static class Combiner {
+        /**
+         * 是否启用库存扣减合并
+         */
+        private boolean enabled = false;
+
+        /**
+         * 合并时间窗口（毫秒）
+         */
+        private long windowMillis = 5;
+
+        /**
+         * 单次合并的最大订单数
+         */
+        private int maxBatchSize = 200;
+
+        /**
+         * 执行合并扣减的线程数
+         */
+        private int threads = 4;
+    }
+
+    /**
+     * 按优惠券分区消费配置
+     * 订单按优惠券ID一致性哈希路由到分区队列，每个分区同一时刻只有一个消费者，
+     * 同一优惠券的库存扣减由一个线程顺序执行，不再在同一行上争抢行锁
+     */
+    @Data
+    public static class Partition {
+        /**
+         * 是否启用分区消费
+         */
+        private boolean enabled = false;
+
+        /**
+         * 分区数量
+         */
+        private int count = 8;
+
+        /**
+         * 每个分区消费者的预取数量
+         */
+        private int prefetch = 20;
+
+        /**
+         * 实例心跳间隔（毫秒）
+         */
+        private long heartbeatMillis = 3000;
+
+        /**
+         * 实例心跳超时时间（毫秒），超时的实例不再分配分区
+         */
+        private long memberTtlMillis = 10000;
+    }
+
+    /**
+     * Redis Stream传输配置
+     */
+    @Data
+    public static class Stream {
+        /**
+         * 订单Stream key
+         */
+        private String key = "stream.orders";
+
+        /**
+         * 消费组
+         */
+        private String group = "g1";
+
+        /**
+         * 死信Stream key
+         */
+        private String deadLetterKey = "stream.orders.dlq";
+
+        /**
+         * 每个实例的消费者线程数
+         */
+        private int consumers = 1;
+
+        /**
+         * 每次读取的最大消息数
+         */
+        private int batchSize = 100;
+
+        /**
+         * 没有消息时阻塞等待的时间（毫秒）
+         */
+        private long blockMillis = 2000;
+
+        /**
+         * 待确认消息空闲多久后可以被重新认领（毫秒）
+         */
+        private long claimMinIdleMillis = 60000;
+
+        /**
+         * 认领待确认消息的间隔（毫秒）
+         */
+        private long claimIntervalMillis = 10000;
+
+        /**
+         * 最大投递次数，超过后转入死信Stream
+         */
+        private int maxDeliveries = 3;
+    }
+
+    /**
+     * 批量消费配置
+     */
+    @Data
+    public static class Batch {
+        /**
+         * 是否启用批量消费
+         */
+        private boolean enabled = false;
+
+        /**
+         * 每批最多拉取的消息数
+         */
+        private int size = 100;
+
+        /**
+         * 凑批最长等待时间（毫秒）
+         */
+        private long receiveTimeout = 50;
+    }
+
+    /**
+     * 库存配置
+     */
+    @Data
+    public static class Stock {
+        /**
+         * 默认的库存存储策略
+         * 可选值：list(库存队列), counter(计数器)
+         */
+        private String defaultMode = "list";
+
+        /**
+         * 库存布局(桶数量、时间窗口)在应用节点本地缓存的时间（毫秒）
+         */
+        private long layoutCacheMillis = 1000;
+    }
+
+    /**
+     * 秒杀资格判断配置
+     */
+    @Data
+    public static class Admission {
+        /**
+         * 是否启用微批提交
+         */
+        private boolean batchEnabled = false;
+
+        /**
+         * 攒批时间窗口（微秒）
+         */
+        private long windowMicros = 500;
+
+        /**
+         * 单次脚本调用最多处理的请求数
+         */
+        private int maxBatchSize = 128;
+
+        /**
+         * 每个优惠券环形缓冲区的容量，写满后退回单条执行
+         */
+        private int ringSize = 4096;
+
+        /**
+         * 执行批量脚本的线程数
+         */
+        private int flushThreads = 4;
+
+        /**
+         * 请求线程等待批量脚本结果的最长时间（毫秒），超时后单独执行脚本
+         */
+        private long waitTimeoutMillis = 1000;
+    }
+
+    /**
+     * 订单消息本地发件箱配置
+     */
+    @Data
+    public static class Outbox {
+        /**
+         * 是否启用发件箱(关闭时同步发送消息)
+         */
+        private boolean enabled = false;
+
+        /**
+         * 发件箱文件路径，同一台机器上的多个实例需要配置不同的路径
+         */
+        private String path = "./data/seckill-outbox.dat";
+
+        /**
+         * 发件箱文件大小（字节）
+         */
+        private int capacity = 64 * 1024 * 1024;
+
+        /**
+         * 每批发送的消息数
+         */
+        private int batchSize = 200;
+
+        /**
+         * 等待发布确认的超时时间（毫秒）
+         */
+        private long confirmTimeoutMillis = 5000;
+
+        /**
+         * 发送失败后的重试间隔（毫秒）
+         */
+        private long retryIntervalMillis = 1000;
+
+        /**
+         * 发件箱为空时的轮询间隔（毫秒）
+         */
+        private long pollIntervalMillis = 100;
+
+        /**
+         * 每次追加后是否强制刷盘(开启后可以抵御机器掉电，但追加变慢)
+         */
+        private boolean forceOnAppend = false;
+    }
+
+    /**
+     * 秒杀结果推送配置
+     */
+    @Data
+    public static class ResultNotify {
+        /**
+         * 长轮询等待结果的超时时间（毫秒），超时后返回处理中，由客户端重新发起
+         */
+        private long waitTimeoutMillis = 10000;
+
+        /**
+         * 本地订单结果表最多保存的条数
+         */
+        private long maxSize = 100000;
+
+        /**
+         * 本地订单结果保存时间（秒）
+         */
+        private long expireSeconds = 300;
+    }
+
+    /**
+     * 秒杀排队(虚拟等候室)配置
+     * 用户先领取带签名的排队号，系统按固定速率放行，放行后才能进入秒杀接口
+     */
+    @Data
+    public static class WaitingRoom {
+        /**
+         * 是否启用排队
+         */
+        private boolean enabled = false;
+
+        /**
+         * 排队号签名密钥，从环境变量 SECKILL_WAITING_ROOM_SECRET 读取；启用排队时不能为空
+         */
+        private String secret;
+
+        /**
+         * 每秒放行的人数，应低于秒杀接口的Sentinel限流阈值
+         */
+        private int releaseRate = 400;
+
+        /**
+         * 排队号有效期（秒）
+         */
+        private long ticketTtlSeconds = 1800;
+
+        /**
+         * 开始放行时间在本地缓存的时间（毫秒）
+         */
+        private long openTimeCacheMillis = 1000;
+    }
+
+    /**
+     * 秒杀活动生命周期配置
+     */
+    @Data
+    public static class Lifecycle {
+        /**
+         * 开始前多少分钟预热(加载库存、预热缓存和布隆过滤器)
+         */
+        private long prewarmLeadMinutes = 5;
+
+        /**
+         * 结束后保留库存等Redis状态的时间（分钟），超过后自动过期
+         */
+        private long retentionMinutes = 60;
+
+        /**
+         * 结束多少分钟后对账并释放状态(应小于保留时间)
+         */
+        private long teardownDelayMinutes = 10;
+
+        /**
+         * 释放状态时向前查找已结束活动的时间范围（小时）
+         */
+        private long teardownLookbackHours = 24;
+    }
+
+    /**
+     * 秒杀Redis状态重建配置
+     * Redis主从切换丢失最近的写入后，按数据库中的库存和订单重建库存和用户订单记录
+     */
+    @Data
+    public static class Rebuild {
+        /**
+         * 并行重建的优惠券数量
+         */
+        private int threads = 8;
+
+        /**
+         * 每个优惠券在内存中缓冲的订单记录位图大小（字节），超过后先写入Redis
+         */
+        private int bufferBytes = 16 * 1024 * 1024;
+    }
+
+    /**
+     * 死信订单重放配置
+     */
+    @Data
+    public static class DlqReplay {
+        /**
+         * 每批从死信队列取出的消息数
+         */
+        private int batchSize = 500;
+
+        /**
+         * 每秒最多重放的订单数
+         */
+        private int ratePerSecond = 2000;
+
+        /**
+         * 单次任务最多重放的消息数，0表示取空死信队列
+         */
+        private long maxMessages = 0;
+    }
+
+    /**
+     * 秒杀请求幂等配置
+     * 客户端超时重试时携带相同的幂等键，直接返回第一次请求的结果
+     */
+    @Data
+    public static class Idempotency {
+        /**
+         * 是否启用幂等键(启用后请求头中携带幂等键时生效)
+         */
+        private boolean enabled = true;
+
+        /**
+         * 幂等键及其结果的保存时间（秒）
+         */
+        private long ttlSeconds = 60;
+
+        /**
+         * 本地缓存最多保存的结果数
+         */
+        private long localMaxSize = 100000;
+
+        /**
+         * 幂等键的最大长度
+         */
+        private int maxKeyLength = 64;
+    }
+
+    /**
+     * 未支付订单超时取消配置
+     * 到期时间保存在Redis ZSET中，本节点的分层时间轮负责准时触发，补偿扫描接管其他节点遗留的订单
+     */
+    @Data
+    public static class UnpaidCancel {
+        /**
+         * 是否启用
+         */
+        private boolean enabled = false;
+
+        /**
+         * 订单创建后多少分钟未支付自动取消
+         */
+        private long timeoutMinutes = 15;
+
+        /**
+         * 时间轮第一层每格的时间（毫秒）
+         */
+        private long tickMillis = 100;
+
+        /**
+         * 时间轮每层的格数
+         */
+        private int wheelSize = 512;
+
+        /**
+         * 每批取消的订单数
+         */
+        private int batchSize = 500;
+
+        /**
+         * 补偿扫描的间隔（毫秒）
+         */
+        private long sweepIntervalMillis = 5000;
+
+        /**
+         * 到期超过多久仍未被认领的订单由补偿扫描接管（毫秒）
+         */
+        private long sweepGraceMillis = 10000;
+
+        /**
+         * 认领订单的租约时长（毫秒），认领后超过该时间仍未完成取消的订单会被补偿扫描重新认领
+         */
+        private long claimLeaseMillis = 60000;
+    }
+}
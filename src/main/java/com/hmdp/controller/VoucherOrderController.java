@@ -5,11 +5,18 @@ import com.alibaba.csp.sentinel.slots.block.BlockException;
 import com.hmdp.dto.Result;
 import com.hmdp.service.IVoucherOrderService;
 import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.SeckillIdempotencyCache;
+import com.hmdp.utils.SeckillWaitingRoom;
+import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import javax.annotation.Resource;
 
@@ -20,11 +27,43 @@ import javax.annotation.Resource;
 public class VoucherOrderController {
     @Resource
     private IVoucherOrderService voucherOrderService;
+    @Resource
+    private SeckillWaitingRoom seckillWaitingRoom;
+    @Resource
+    private SeckillIdempotencyCache seckillIdempotencyCache;
     
+    /**
+     * 领取秒杀排队号(启用排队时，秒杀前需要先排队)
+     * @param voucherId 券ID
+     * @return 排队号和当前位置
+     */
+    @PostMapping("waiting-room/{id}")
+    public Result enterWaitingRoom(@PathVariable("id") Long voucherId) {
+        if (!seckillWaitingRoom.isEnabled()) {
+            return Result.fail("当前秒杀无需排队");
+        }
+        return Result.ok(seckillWaitingRoom.enter(voucherId, UserHolder.getUser().getId()));
+    }
+
+    /**
+     * 查询排队位置，只校验排队号签名并计算位置，不访问订单链路
+     * @param voucherId 券ID
+     * @param ticket 排队号
+     * @return 当前位置和预计等待时间
+     */
+    @GetMapping("waiting-room/{id}/position")
+    public Result waitingRoomPosition(@PathVariable("id") Long voucherId,
+                                      @RequestHeader(SeckillWaitingRoom.TICKET_HEADER) String ticket) {
+        return seckillWaitingRoom.position(voucherId, ticket);
+    }
+
     /**
      * 秒杀接口
-     * 使用Sentinel进行限流和熔断保护
+     * 使用Sentinel进行限流和熔断保护，启用排队时只有已放行的排队号可以进入；
+     * 携带幂等键的重试请求直接返回第一次请求的结果
      * @param voucherId 券ID
+     * @param ticket 排队号(启用排队时必填)
+     * @param idempotencyKey 幂等键(可选，客户端重试时保持不变)
      * @return 订单结果
      */
     @PostMapping("seckill/{id}")
@@ -33,17 +72,29 @@ public class VoucherOrderController {
             blockHandler = "seckillVoucherBlockHandler", // 限流时的处理方法
             fallback = "seckillVoucherFallback" // 熔断降级时的处理方法
     )
-    public Result seckillVoucher(@PathVariable("id") Long voucherId) {
-        return voucherOrderService.seckillVoucher(voucherId);
+    public Result seckillVoucher(@PathVariable("id") Long voucherId,
+                                 @RequestHeader(value = SeckillWaitingRoom.TICKET_HEADER, required = false) String ticket,
+                                 @RequestHeader(value = SeckillIdempotencyCache.IDEMPOTENCY_HEADER, required = false) String idempotencyKey) {
+        Long userId = UserHolder.getUser().getId();
+        if (seckillWaitingRoom.isEnabled()) {
+            Result rejected = seckillWaitingRoom.checkAdmission(voucherId, userId, ticket);
+            if (rejected != null) {
+                return rejected;
+            }
+        }
+        return seckillIdempotencyCache.execute(userId, voucherId, idempotencyKey,
+                () -> voucherOrderService.seckillVoucher(voucherId));
     }
     
     /**
      * seckillVoucher的限流处理方法（当被Sentinel限流时触发）
      * @param voucherId 券ID
+     * @param ticket 排队号
+     * @param idempotencyKey 幂等键
      * @param ex 限流异常
      * @return 限流结果
      */
-    public Result seckillVoucherBlockHandler(Long voucherId, BlockException ex) {
+    public Result seckillVoucherBlockHandler(Long voucherId, String ticket, String idempotencyKey, BlockException ex) {
         log.warn("秒杀接口被限流，voucherId: {}, 异常: {}", voucherId, ex.getClass().getSimpleName());
         return Result.fail("秒杀人数过多，请稍后再试");
     }
@@ -51,10 +102,12 @@ public class VoucherOrderController {
     /**
      * seckillVoucher的熔断降级处理方法（当接口出现异常时触发）
      * @param voucherId 券ID
+     * @param ticket 排队号
+     * @param idempotencyKey 幂等键
      * @param throwable 异常
      * @return 降级结果
      */
-    public Result seckillVoucherFallback(Long voucherId, Throwable throwable) {
+    public Result seckillVoucherFallback(Long voucherId, String ticket, String idempotencyKey, Throwable throwable) {
         log.error("秒杀接口出现异常，触发熔断，voucherId: {}, 异常: {}", voucherId, throwable.getMessage());
         return Result.fail("服务器开小差了，请稍后再试");
     }
@@ -68,4 +121,29 @@ public class VoucherOrderController {
     public Result getResult(@PathVariable("id") Long voucherId) {
         return voucherOrderService.getResult(voucherId);
     }
+
+    /**
+     * 长轮询等待秒杀订单结果
+     * 订单处理完成后立即返回结果，超时返回处理中，客户端可以重新发起或退回到 /result/{id} 轮询
+     * @param voucherId 券ID
+     * @return 查询结果
+     */
+    @PostMapping("/result/{id}/wait")
+    public DeferredResult<Result> waitResult(@PathVariable("id") Long voucherId) {
+        return voucherOrderService.waitResult(voucherId);
+    }
+
+    /**
+     * 管理端查询优惠券订单(跨所有订单分表)
+     * @param voucherId 券ID
+     * @param status 订单处理状态(可选)
+     * @param limit 最多返回的订单数量
+     * @return 按创建时间倒序的订单
+     */
+    @GetMapping("/admin/voucher/{id}")
+    public Result queryVoucherOrders(@PathVariable("id") Long voucherId,
+                                     @RequestParam(value = "status", required = false) Integer status,
+                                     @RequestParam(value = "limit", defaultValue = "100") Integer limit) {
+        return Result.ok(voucherOrderService.queryVoucherOrders(voucherId, status, Math.min(Math.max(limit, 1), 1000)));
+    }
 }
@@ -0,0 +1,15 @@
+package com.hmdp.dto;
+
+import com.hmdp.entity.VoucherOrder;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 秒杀订单处理结果消息
+ */
+@Data
+public class SeckillResultMessage {
+    private List<VoucherOrder> orders;  // 只包含订单ID、用户ID、优惠券ID和处理状态
+    private long timestamp;
+}
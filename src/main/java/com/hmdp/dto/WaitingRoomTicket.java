@@ -0,0 +1,14 @@
+package com.hmdp.dto;
+
+import lombok.Data;
+
+/**
+ * 秒杀排队状态
+ */
+@Data
+public class WaitingRoomTicket {
+    private String ticket;      // 带签名的排队号，秒杀时放在请求头中
+    private Long position;      // 前面还有多少人，0表示已放行
+    private Boolean admitted;   // 是否已放行
+    private Long waitMillis;    // 预计还需等待的时间（毫秒）
+}
@@ -37,6 +37,16 @@ public class SeckillVoucher implements Serializable {
      */
     private Integer stock;
 
+    /**
+     * 秒杀库存存储策略 list：库存队列；counter：计数器；为空时使用默认策略
+     */
+    private String stockMode;
+
+    /**
+     * 秒杀库存桶数量，热点优惠券的库存拆分到多个桶，为空或不大于1时不分桶
+     */
+    private Integer stockBuckets;
+
     /**
      * 创建时间
      */
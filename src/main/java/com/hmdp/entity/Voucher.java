@@ -90,6 +90,18 @@ public class Voucher implements Serializable {
     @TableField(exist = false)
     private LocalDateTime endTime;
 
+    /**
+     * 秒杀库存存储策略 list：库存队列；counter：计数器；为空时使用默认策略
+     */
+    @TableField(exist = false)
+    private String stockMode;
+
+    /**
+     * 秒杀库存桶数量，热点优惠券的库存拆分到多个桶，为空或不大于1时不分桶
+     */
+    @TableField(exist = false)
+    private Integer stockBuckets;
+
     /**
      * 创建时间
      */
@@ -2,6 +2,10 @@ package com.hmdp.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.hmdp.entity.SeckillVoucher;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.cursor.Cursor;
+
+import java.time.LocalDateTime;
 
 /**
  * <p>
@@ -13,4 +17,27 @@ import com.hmdp.entity.SeckillVoucher;
  */
 public interface SeckillVoucherMapper extends BaseMapper<SeckillVoucher> {
 
+    /**
+     * 库存充足时一次扣减count个库存
+     * @return 影响行数，0表示库存不足
+     */
+    int deductStock(@Param("voucherId") Long voucherId, @Param("count") int count);
+
+    /**
+     * 查询库存并锁定该行，直到事务结束
+     * @return 剩余库存，优惠券不存在时返回null
+     */
+    Integer selectStockForUpdate(@Param("voucherId") Long voucherId);
+
+    /**
+     * 归还count个库存(取消订单)
+     * @return 影响行数
+     */
+    int restoreStock(@Param("voucherId") Long voucherId, @Param("count") int count);
+
+    /**
+     * 流式查询在指定时间之后结束的秒杀优惠券(进行中和未开始的活动)
+     * 需要在事务中遍历，事务结束后游标关闭
+     */
+    Cursor<SeckillVoucher> selectEndAfterCursor(@Param("time") LocalDateTime time);
 }
@@ -2,6 +2,10 @@ package com.hmdp.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.hmdp.entity.VoucherOrder;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.cursor.Cursor;
+
+import java.util.List;
 
 /**
  * <p>
@@ -13,4 +17,21 @@ import com.hmdp.entity.VoucherOrder;
  */
 public interface VoucherOrderMapper extends BaseMapper<VoucherOrder> {
 
+    /**
+     * 插入订单，(user_id, voucher_id)已存在时跳过(ON DUPLICATE KEY UPDATE id = id，其他错误照常抛出)
+     * @return 影响行数，0表示该用户已经下过单
+     */
+    int insertIgnore(VoucherOrder order);
+
+    /**
+     * 多行INSERT批量插入订单，(user_id, voucher_id)已存在的行被跳过
+     * @return 实际插入的行数
+     */
+    int insertIgnoreBatch(@Param("orders") List<VoucherOrder> orders);
+
+    /**
+     * 流式查询优惠券的有效订单(处理中和成功)的用户ID，逐行从服务端读取，不在内存中保存整个结果集
+     * 需要在事务中遍历，事务结束后游标关闭
+     */
+    Cursor<Long> selectUserIdCursor(@Param("voucherId") Long voucherId);
 }
@@ -0,0 +1,31 @@
+package com.hmdp.mq;
+
+import com.hmdp.entity.VoucherOrder;
+
+/**
+ * 秒杀订单传输方式
+ * 秒杀资格判断通过后，订单经由该传输方式交给异步消费者落库，
+ * 由配置项 seckill.order.transport 选择具体实现
+ */
+public interface OrderTransport {
+
+    /**
+     * 传输方式名称，对应配置项 seckill.order.transport
+     */
+    String getName();
+
+    /**
+     * 秒杀脚本需要写入的Redis Stream key
+     * 返回非null时，订单在资格判断的Lua脚本中原子写入该Stream，{@link #send(VoucherOrder)} 不再需要发送
+     * @return Stream key，不通过脚本写入时返回null
+     */
+    default String getStreamKey() {
+        return null;
+    }
+
+    /**
+     * 发送已通过资格判断的订单
+     * @param voucherOrder 订单
+     */
+    void send(VoucherOrder voucherOrder);
+}
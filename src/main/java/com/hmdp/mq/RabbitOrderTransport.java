@@ -0,0 +1,49 @@
+package com.hmdp.mq;
+
+import com.hmdp.config.RabbitMQConfig;
+import com.hmdp.entity.VoucherOrder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+
+/**
+ * 通过RabbitMQ传输秒杀订单(默认)
+ * 启用本地发件箱时先写入发件箱，由后台线程确认发送；否则同步发送
+ */
+@Slf4j
+@Component
+public class RabbitOrderTransport implements OrderTransport {
+
+    public static final String NAME = "rabbitmq";
+
+    @Resource
+    private RabbitTemplate rabbitTemplate;
+    @Resource
+    private SeckillOrderOutbox seckillOrderOutbox;
+    @Resource
+    private SeckillOrderPartitioner seckillOrderPartitioner;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void send(VoucherOrder voucherOrder) {
+        // 启用发件箱时追加到本地发件箱后立即返回，由后台线程发送到RabbitMQ
+        if (seckillOrderOutbox.isEnabled() && seckillOrderOutbox.append(voucherOrder)) {
+            log.info("秒杀订单已写入发件箱，订单ID：{}", voucherOrder.getId());
+            return;
+        }
+
+        // 发送消息到RabbitMQ(启用分区消费时按优惠券路由到分区队列)
+        rabbitTemplate.convertAndSend(
+                RabbitMQConfig.EXCHANGE_NAME,
+                seckillOrderPartitioner.routingKey(voucherOrder.getVoucherId()),
+                voucherOrder
+        );
+        log.info("发送秒杀消息到RabbitMQ，订单ID：{}", voucherOrder.getId());
+    }
+}
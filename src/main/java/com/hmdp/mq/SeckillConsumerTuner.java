@@ -0,0 +1,162 @@
+package com.hmdp.mq;
+
+import com.hmdp.config.RabbitMQConfig;
+import com.hmdp.config.SeckillConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 秒杀订单消费者自适应调整
+ * 按固定间隔统计订单落库的平均耗时和订单队列积压，用AIMD调整订单监听容器的并发消费者数：
+ * 耗时超过目标值时成倍减少(数据库已经过载)，耗时正常且积压较多时逐个增加；
+ * 每次决策和当前取值都通过Micrometer指标暴露(seckill.consumer.*)
+ *
+ * 预取数量不调整：它只在消费者启动时设置，修改后对已经运行的消费者不生效，重启消费者又会在过载时重新投递未确认的消息；
+ * 每个消费者单独预取，减少并发数时同时在途的消息数也按比例减少
+ */
+@Slf4j
+@Component
+public class SeckillConsumerTuner implements ApplicationRunner, DisposableBean {
+
+    private final RabbitListenerEndpointRegistry listenerEndpointRegistry;
+    private final RabbitTemplate rabbitTemplate;
+    private final MeterRegistry meterRegistry;
+    private final SeckillConfig.Tuner config;
+    private final Timer persistTimer;
+
+    /**
+     * 当前统计窗口内的落库次数和总耗时
+     */
+    private final LongAdder windowCount = new LongAdder();
+    private final LongAdder windowNanos = new LongAdder();
+
+    private final AtomicLong concurrency = new AtomicLong();
+    private final AtomicLong latencyMillis = new AtomicLong();
+    private final AtomicLong queueDepth = new AtomicLong();
+
+    private ScheduledExecutorService tuneExecutor;
+
+    public SeckillConsumerTuner(RabbitListenerEndpointRegistry listenerEndpointRegistry, RabbitTemplate rabbitTemplate,
+                                MeterRegistry meterRegistry, SeckillConfig seckillConfig) {
+        this.listenerEndpointRegistry = listenerEndpointRegistry;
+        this.rabbitTemplate = rabbitTemplate;
+        this.meterRegistry = meterRegistry;
+        this.config = seckillConfig.getOrder().getTuner();
+        this.persistTimer = Timer.builder("seckill.order.persist")
+                .description("订单落库耗时")
+                .register(meterRegistry);
+        meterRegistry.gauge("seckill.consumer.concurrency", concurrency);
+        meterRegistry.gauge("seckill.consumer.latency", latencyMillis);
+        meterRegistry.gauge("seckill.consumer.queue.depth", queueDepth);
+    }
+
+    /**
+     * 记录一次订单落库耗时(单条或一批)
+     * @param nanos 耗时（纳秒）
+     */
+    public void recordPersist(long nanos) {
+        persistTimer.record(nanos, TimeUnit.NANOSECONDS);
+        windowCount.increment();
+        windowNanos.add(nanos);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!config.isEnabled()) {
+            return;
+        }
+        tuneExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "seckill-consumer-tuner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        tuneExecutor.scheduleWithFixedDelay(this::tuneQuietly,
+                config.getIntervalMillis(), config.getIntervalMillis(), TimeUnit.MILLISECONDS);
+        log.info("秒杀订单消费者自适应调整已启动，并发数: {}~{}",
+                config.getMinConcurrency(), config.getMaxConcurrency());
+    }
+
+    private void tuneQuietly() {
+        try {
+            tune();
+        } catch (Exception e) {
+            log.error("秒杀订单消费者调整失败", e);
+        }
+    }
+
+    /**
+     * 一次调整：耗时超标时乘法减少，否则有积压时加法增加
+     */
+    private void tune() {
+        MessageListenerContainer listenerContainer =
+                listenerEndpointRegistry.getListenerContainer(RabbitMQConfig.SECKILL_ORDER_LISTENER_ID);
+        if (!(listenerContainer instanceof SimpleMessageListenerContainer) || !listenerContainer.isRunning()) {
+            // 批量消费或分区消费时订单监听容器没有运行
+            return;
+        }
+        SimpleMessageListenerContainer container = (SimpleMessageListenerContainer) listenerContainer;
+
+        long count = windowCount.sumThenReset();
+        long nanos = windowNanos.sumThenReset();
+        long latency = count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(nanos / count);
+        Integer depth = rabbitTemplate.execute(channel ->
+                channel.queueDeclarePassive(RabbitMQConfig.QUEUE_NAME).getMessageCount());
+        int backlog = depth == null ? 0 : depth;
+        latencyMillis.set(latency);
+        queueDepth.set(backlog);
+
+        int currentConcurrency = (int) Math.max(concurrency.get(), config.getMinConcurrency());
+        int nextConcurrency = currentConcurrency;
+        String action;
+        String reason;
+        if (count > 0 && latency > config.getTargetLatencyMillis()) {
+            nextConcurrency = Math.max(config.getMinConcurrency(), (int) (currentConcurrency * config.getDecreaseFactor()));
+            action = "decrease";
+            reason = "latency";
+        } else if (backlog > (long) currentConcurrency * config.getBacklogPerConsumer()) {
+            nextConcurrency = Math.min(config.getMaxConcurrency(), currentConcurrency + 1);
+            action = "increase";
+            reason = "backlog";
+        } else {
+            action = "hold";
+            reason = count == 0 ? "idle" : "steady";
+        }
+        if (nextConcurrency == currentConcurrency && !"hold".equals(action)) {
+            // 已经到达上下限
+            action = "hold";
+            reason = "bound";
+        }
+        meterRegistry.counter("seckill.consumer.tuner.decisions", "action", action, "reason", reason).increment();
+
+        if (nextConcurrency != currentConcurrency || concurrency.get() == 0) {
+            container.setConcurrentConsumers(nextConcurrency);
+        }
+        concurrency.set(nextConcurrency);
+        if (!"hold".equals(action)) {
+            log.info("调整秒杀订单消费者，原因: {}，平均落库耗时: {}ms，积压: {}，并发数: {} -> {}",
+                    reason, latency, backlog, currentConcurrency, nextConcurrency);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (tuneExecutor != null) {
+            tuneExecutor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.hmdp.mq;
+
+import cn.hutool.json.JSONUtil;
+import com.hmdp.config.RabbitMQConfig;
+import com.hmdp.config.SeckillConfig;
+import com.hmdp.entity.VoucherOrder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 秒杀订单本地发件箱
+ * 订单先追加到内存映射的本地文件后立即返回，由后台线程批量发送到RabbitMQ，
+ * 收到发布确认后再推进读位置；文件读写位置保存在文件头中，重启后从未确认的位置继续发送
+ *
+ * 文件格式：
+ * 文件头 [魔数 int][读位置 long][写位置 long]
+ * 记录   [长度 int][订单JSON]
+ */
+@Slf4j
+@Component
+public class SeckillOrderOutbox implements DisposableBean {
+
+    private static final int MAGIC = 0x534B4F42;
+    private static final int READ_OFFSET_POS = 4;
+    private static final int WRITE_OFFSET_POS = 12;
+    private static final int HEADER_SIZE = 32;
+
+    private final RabbitTemplate rabbitTemplate;
+    private final SeckillOrderPartitioner seckillOrderPartitioner;
+    private final SeckillConfig.Outbox config;
+
+    private FileChannel fileChannel;
+    private MappedByteBuffer buffer;
+    private long readOffset;
+    private long writeOffset;
+
+    private Thread publisherThread;
+    private volatile boolean running = false;
+
+    public SeckillOrderOutbox(RabbitTemplate rabbitTemplate, SeckillOrderPartitioner seckillOrderPartitioner,
+                              SeckillConfig seckillConfig) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.seckillOrderPartitioner = seckillOrderPartitioner;
+        this.config = seckillConfig.getOutbox();
+    }
+
+    /**
+     * 是否启用发件箱
+     */
+    public boolean isEnabled() {
+        return config.isEnabled();
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!config.isEnabled()) {
+            return;
+        }
+        Path path = Paths.get(config.getPath());
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        fileChannel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, config.getCapacity());
+
+        if (buffer.getInt(0) == MAGIC) {
+            // 从上次未确认的位置继续发送
+            readOffset = buffer.getLong(READ_OFFSET_POS);
+            writeOffset = buffer.getLong(WRITE_OFFSET_POS);
+            log.info("秒杀订单发件箱恢复完成，待发送字节数: {}", writeOffset - readOffset);
+        } else {
+            readOffset = HEADER_SIZE;
+            writeOffset = HEADER_SIZE;
+            buffer.putInt(0, MAGIC);
+            saveOffsets();
+        }
+
+        publisherThread = new Thread(this::publishLoop);
+        publisherThread.setDaemon(true);
+        publisherThread.setName("seckill-outbox-publisher");
+        running = true;
+        publisherThread.start();
+    }
+
+    /**
+     * 追加订单到发件箱
+     * @param voucherOrder 订单
+     * @return 是否追加成功，文件空间不足时返回false，由调用方直接发送
+     */
+    public synchronized boolean append(VoucherOrder voucherOrder) {
+        byte[] payload = JSONUtil.toJsonStr(voucherOrder).getBytes(StandardCharsets.UTF_8);
+        int recordSize = 4 + payload.length;
+        if (writeOffset + recordSize > config.getCapacity()) {
+            compact();
+            if (writeOffset + recordSize > config.getCapacity()) {
+                log.warn("秒杀订单发件箱已满，订单ID: {}", voucherOrder.getId());
+                return false;
+            }
+        }
+        int pos = (int) writeOffset;
+        // 先写内容再写长度，最后推进写位置，异常退出时不会读到半条记录
+        for (int i = 0; i < payload.length; i++) {
+            buffer.put(pos + 4 + i, payload[i]);
+        }
+        buffer.putInt(pos, payload.length);
+        writeOffset += recordSize;
+        saveOffsets();
+        if (config.isForceOnAppend()) {
+            buffer.force();
+        }
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * 后台发送线程：批量取出记录，等待全部确认后推进读位置
+     */
+    private void publishLoop() {
+        while (running) {
+            try {
+                Batch batch = nextBatch();
+                if (batch == null) {
+                    continue;
+                }
+                if (publish(batch.orders)) {
+                    commit(batch.bytes);
+                } else {
+                    // 未全部确认，稍后整批重发(消费端按订单幂等)
+                    TimeUnit.MILLISECONDS.sleep(config.getRetryIntervalMillis());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("秒杀订单发件箱发送异常", e);
+            }
+        }
+    }
+
+    /**
+     * 取出下一批待发送的记录，没有记录时最多等待一个轮询间隔
+     */
+    private synchronized Batch nextBatch() throws InterruptedException {
+        if (readOffset == writeOffset) {
+            wait(config.getPollIntervalMillis());
+            if (readOffset == writeOffset) {
+                return null;
+            }
+        }
+        Batch batch = new Batch();
+        long pos = readOffset;
+        while (pos < writeOffset && batch.orders.size() < config.getBatchSize()) {
+            int length = buffer.getInt((int) pos);
+            byte[] payload = new byte[length];
+            for (int i = 0; i < length; i++) {
+                payload[i] = buffer.get((int) pos + 4 + i);
+            }
+            batch.orders.add(JSONUtil.toBean(new String(payload, StandardCharsets.UTF_8), VoucherOrder.class));
+            pos += 4 + length;
+        }
+        batch.bytes = pos - readOffset;
+        return batch;
+    }
+
+    /**
+     * 发送一批订单并等待发布确认
+     * @return 是否全部确认成功
+     */
+    private boolean publish(List<VoucherOrder> orders) throws InterruptedException {
+        List<CorrelationData> confirms = new ArrayList<>(orders.size());
+        for (VoucherOrder voucherOrder : orders) {
+            CorrelationData correlationData = new CorrelationData(voucherOrder.getId().toString());
+            rabbitTemplate.convertAndSend(RabbitMQConfig.EXCHANGE_NAME,
+                    seckillOrderPartitioner.routingKey(voucherOrder.getVoucherId()), voucherOrder, correlationData);
+            confirms.add(correlationData);
+        }
+        long deadline = System.currentTimeMillis() + config.getConfirmTimeoutMillis();
+        for (CorrelationData correlationData : confirms) {
+            try {
+                long timeout = Math.max(0, deadline - System.currentTimeMillis());
+                CorrelationData.Confirm confirm = correlationData.getFuture().get(timeout, TimeUnit.MILLISECONDS);
+                if (!confirm.isAck() || correlationData.getReturned() != null) {
+                    log.warn("秒杀订单消息未被确认，订单ID: {}，原因: {}", correlationData.getId(), confirm.getReason());
+                    return false;
+                }
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                log.warn("等待秒杀订单消息确认失败，订单ID: {}，异常: {}", correlationData.getId(), e.getMessage());
+                return false;
+            }
+        }
+        log.debug("秒杀订单发件箱发送完成，数量: {}", orders.size());
+        return true;
+    }
+
+    /**
+     * 推进读位置，全部发送完成时截断文件(读写位置回到文件头之后)
+     */
+    private synchronized void commit(long bytes) {
+        readOffset += bytes;
+        if (readOffset == writeOffset) {
+            readOffset = HEADER_SIZE;
+            writeOffset = HEADER_SIZE;
+        }
+        saveOffsets();
+    }
+
+    /**
+     * 把未发送的记录移动到文件头之后，腾出已发送记录占用的空间
+     * 读位置按相对偏移推进，因此发送线程持有的批次不受影响
+     */
+    private void compact() {
+        if (readOffset == HEADER_SIZE) {
+            return;
+        }
+        int length = (int) (writeOffset - readOffset);
+        for (int i = 0; i < length; i++) {
+            buffer.put(HEADER_SIZE + i, buffer.get((int) readOffset + i));
+        }
+        readOffset = HEADER_SIZE;
+        writeOffset = HEADER_SIZE + length;
+        saveOffsets();
+    }
+
+    private void saveOffsets() {
+        buffer.putLong(READ_OFFSET_POS, readOffset);
+        buffer.putLong(WRITE_OFFSET_POS, writeOffset);
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        running = false;
+        if (publisherThread != null) {
+            publisherThread.interrupt();
+            publisherThread.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        if (buffer != null) {
+            buffer.force();
+        }
+        if (fileChannel != null) {
+            fileChannel.close();
+        }
+    }
+
+    /**
+     * 一批待发送的记录
+     */
+    private static class Batch {
+        private final List<VoucherOrder> orders = new ArrayList<>();
+        private long bytes;
+    }
+}
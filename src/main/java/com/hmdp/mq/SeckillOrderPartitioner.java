@@ -0,0 +1,77 @@
+package com.hmdp.mq;
+
+import com.hmdp.config.RabbitMQConfig;
+import com.hmdp.config.SeckillConfig;
+import org.springframework.stereotype.Component;
+
+/**
+ * 秒杀订单分区路由
+ * 按优惠券ID做跳跃一致性哈希(Jump Consistent Hash)选择分区，
+ * 同一优惠券的订单总是进入同一个分区队列，调整分区数量时只有少量优惠券会换分区
+ */
+@Component
+public class SeckillOrderPartitioner {
+
+    private final SeckillConfig.Partition config;
+
+    public SeckillOrderPartitioner(SeckillConfig seckillConfig) {
+        this.config = seckillConfig.getOrder().getPartition();
+    }
+
+    /**
+     * 是否启用分区消费
+     */
+    public boolean isEnabled() {
+        return config.isEnabled();
+    }
+
+    /**
+     * 分区数量
+     */
+    public int getPartitionCount() {
+        return config.getCount();
+    }
+
+    /**
+     * 订单消息的路由键，未启用分区时使用原来的路由键
+     * @param voucherId 优惠券ID
+     * @return 路由键
+     */
+    public String routingKey(Long voucherId) {
+        if (!config.isEnabled()) {
+            return RabbitMQConfig.ROUTING_KEY;
+        }
+        return RabbitMQConfig.PARTITION_ROUTING_KEY_PREFIX + partitionOf(voucherId);
+    }
+
+    /**
+     * 优惠券所在的分区
+     */
+    public int partitionOf(Long voucherId) {
+        return jumpConsistentHash(voucherId, config.getCount());
+    }
+
+    /**
+     * 分区队列名称
+     */
+    public static String queueName(int partition) {
+        return RabbitMQConfig.PARTITION_QUEUE_PREFIX + partition;
+    }
+
+    /**
+     * Jump Consistent Hash (Lamping & Veach)
+     * @param key 键
+     * @param buckets 桶数量
+     * @return 桶编号 [0, buckets)
+     */
+    static int jumpConsistentHash(long key, int buckets) {
+        long b = -1;
+        long j = 0;
+        while (j < buckets) {
+            b = j;
+            key = key * 2862933555777941757L + 1;
+            j = (long) ((b + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) b;
+    }
+}
@@ -0,0 +1,162 @@
+package com.hmdp.mq;
+
+import com.hmdp.config.SeckillConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.listener.DirectMessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.api.ChannelAwareMessageListener;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 秒杀订单分区消费者管理
+ * 各实例定期在Redis有序集合中登记心跳，按存活实例列表均分分区(分区号对实例数取模)，
+ * 实例上线或下线后，下一次心跳时各实例自动增减自己订阅的分区队列；
+ * 分区队列开启了单活消费者，交接过程中新旧实例同时订阅也只有一个在消费，保证同一优惠券的订单顺序处理
+ */
+@Slf4j
+@Component
+public class SeckillPartitionConsumerManager implements ApplicationRunner, DisposableBean {
+
+    private static final String MEMBERS_KEY = "seckill:partition:members";
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private ConnectionFactory connectionFactory;
+
+    private final SeckillConfig.Partition config;
+    private final String memberId;
+
+    private ChannelAwareMessageListener messageListener;
+    private DirectMessageListenerContainer container;
+    private ScheduledExecutorService heartbeatExecutor;
+
+    /**
+     * 当前实例负责的分区
+     */
+    private final Set<Integer> ownedPartitions = new HashSet<>();
+
+    public SeckillPartitionConsumerManager(SeckillConfig seckillConfig) {
+        this.config = seckillConfig.getOrder().getPartition();
+        this.memberId = ManagementFactory.getRuntimeMXBean().getName() + ":" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    /**
+     * 设置分区订单消息的处理方法(由订单服务注册)
+     */
+    public void setMessageListener(ChannelAwareMessageListener messageListener) {
+        this.messageListener = messageListener;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!config.isEnabled()) {
+            return;
+        }
+        if (messageListener == null) {
+            throw new IllegalStateException("未注册分区订单消息的处理方法");
+        }
+        container = new DirectMessageListenerContainer(connectionFactory);
+        // 每个分区队列一个消费者，消息按顺序逐条处理
+        container.setConsumersPerQueue(1);
+        container.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        container.setPrefetchCount(config.getPrefetch());
+        container.setMessageListener(messageListener);
+        container.start();
+
+        heartbeatExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "seckill-partition-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeatExecutor.scheduleWithFixedDelay(this::heartbeat, 0, config.getHeartbeatMillis(), TimeUnit.MILLISECONDS);
+        log.info("秒杀订单分区消费已启动，实例：{}，分区数量：{}", memberId, config.getCount());
+    }
+
+    /**
+     * 登记心跳，清理超时实例，并按最新的实例列表重新分配分区
+     */
+    private void heartbeat() {
+        try {
+            long now = System.currentTimeMillis();
+            stringRedisTemplate.opsForZSet().add(MEMBERS_KEY, memberId, now);
+            stringRedisTemplate.opsForZSet().removeRangeByScore(MEMBERS_KEY, 0, now - config.getMemberTtlMillis());
+            Set<String> members = stringRedisTemplate.opsForZSet().range(MEMBERS_KEY, 0, -1);
+            if (members == null || !members.contains(memberId)) {
+                return;
+            }
+            // 所有实例按相同的顺序排列，各自计算出的分配结果一致
+            List<String> sortedMembers = new ArrayList<>(members);
+            Collections.sort(sortedMembers);
+            rebalance(sortedMembers.indexOf(memberId), sortedMembers.size());
+        } catch (Exception e) {
+            log.error("秒杀订单分区心跳失败，实例：{}", memberId, e);
+        }
+    }
+
+    /**
+     * 重新分配分区：分区号对实例数取模等于本实例序号的分区由本实例负责
+     */
+    private synchronized void rebalance(int index, int memberCount) {
+        Set<Integer> target = new HashSet<>();
+        for (int partition = 0; partition < config.getCount(); partition++) {
+            if (partition % memberCount == index) {
+                target.add(partition);
+            }
+        }
+        if (target.equals(ownedPartitions)) {
+            return;
+        }
+
+        List<String> added = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        for (Integer partition : target) {
+            if (!ownedPartitions.contains(partition)) {
+                added.add(SeckillOrderPartitioner.queueName(partition));
+            }
+        }
+        for (Integer partition : ownedPartitions) {
+            if (!target.contains(partition)) {
+                removed.add(SeckillOrderPartitioner.queueName(partition));
+            }
+        }
+        if (!removed.isEmpty()) {
+            container.removeQueueNames(removed.toArray(new String[0]));
+        }
+        if (!added.isEmpty()) {
+            container.addQueueNames(added.toArray(new String[0]));
+        }
+        ownedPartitions.clear();
+        ownedPartitions.addAll(target);
+        log.info("秒杀订单分区重新分配，实例：{}，实例数：{}，负责分区：{}", memberId, memberCount, target);
+    }
+
+    @Override
+    public void destroy() {
+        if (heartbeatExecutor != null) {
+            heartbeatExecutor.shutdownNow();
+        }
+        if (container != null) {
+            container.stop();
+            // 主动退出，其他实例在下一次心跳时接管分区
+            stringRedisTemplate.opsForZSet().remove(MEMBERS_KEY, memberId);
+        }
+    }
+}
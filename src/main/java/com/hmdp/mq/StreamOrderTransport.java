@@ -0,0 +1,323 @@
+package com.hmdp.mq;
+
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.config.SeckillConfig;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.utils.RedisScripts;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.hmdp.utils.RedisConstants.ORDER_STATUS_PENDING;
+
+/**
+ * 通过Redis Stream传输秒杀订单
+ * 订单在秒杀资格判断的Lua脚本中原子写入Stream，不再有Redis和MQ之间的额外网络往返和丢单窗口；
+ * 消费者使用XREADGROUP批量读取，处理成功后XACK并删除消息，
+ * 处理失败的消息留在待确认列表中，由XAUTOCLAIM在空闲超时后重新认领，超过投递次数后转入死信Stream
+ */
+@Slf4j
+@Component
+public class StreamOrderTransport implements OrderTransport, ApplicationRunner, DisposableBean {
+
+    public static final String NAME = "stream";
+
+    /**
+     * Stream消息字段，与秒杀脚本中的XADD保持一致
+     */
+    private static final String FIELD_USER_ID = "userId";
+    private static final String FIELD_VOUCHER_ID = "voucherId";
+    private static final String FIELD_ORDER_ID = "id";
+
+    /**
+     * 认领超时消息的脚本，返回值中既有字符串(消息ID、字段)也有整数(投递次数)
+     */
+    private static final DefaultRedisScript<List<Object>> AUTO_CLAIM_SCRIPT =
+            RedisScripts.listScript("stream_autoclaim.lua");
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private SeckillConfig seckillConfig;
+    /**
+     * 延迟注入，避免与订单服务形成循环依赖
+     */
+    @Resource
+    @Lazy
+    private IVoucherOrderService voucherOrderService;
+
+    private ExecutorService consumerExecutor;
+    private volatile boolean running = false;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String getStreamKey() {
+        return config().getKey();
+    }
+
+    @Override
+    public void send(VoucherOrder voucherOrder) {
+        // 订单已经在秒杀脚本中写入Stream
+        log.debug("秒杀订单已写入Stream，订单ID：{}", voucherOrder.getId());
+    }
+
+    private SeckillConfig.Stream config() {
+        return seckillConfig.getOrder().getStream();
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!NAME.equals(seckillConfig.getOrder().getTransport())) {
+            return;
+        }
+        createGroup();
+        int consumers = config().getConsumers();
+        String consumerPrefix = ManagementFactory.getRuntimeMXBean().getName();
+        AtomicInteger threadIndex = new AtomicInteger();
+        consumerExecutor = Executors.newFixedThreadPool(consumers, r -> {
+            Thread thread = new Thread(r, "seckill-stream-consumer-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        running = true;
+        for (int i = 0; i < consumers; i++) {
+            String consumerName = consumerPrefix + "-" + i;
+            consumerExecutor.submit(() -> consume(consumerName));
+        }
+        log.info("秒杀订单Stream消费者已启动，Stream：{}，消费组：{}，消费者数量：{}",
+                config().getKey(), config().getGroup(), consumers);
+    }
+
+    /**
+     * 创建消费组，Stream不存在时一并创建
+     */
+    private void createGroup() {
+        try {
+            stringRedisTemplate.execute(connection -> connection.streamCommands().xGroupCreate(
+                    config().getKey().getBytes(StandardCharsets.UTF_8), config().getGroup(), ReadOffset.from("0"), true),
+                    true);
+        } catch (Exception e) {
+            // 消费组已存在
+            if (!StrUtil.containsIgnoreCase(String.valueOf(e.getMessage()), "BUSYGROUP")
+                    && !StrUtil.containsIgnoreCase(String.valueOf(e.getCause()), "BUSYGROUP")) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 消费循环：定期认领超时的待确认消息，其余时间阻塞读取新消息
+     */
+    private void consume(String consumerName) {
+        SeckillConfig.Stream config = config();
+        Consumer consumer = Consumer.from(config.getGroup(), consumerName);
+        StreamReadOptions readOptions = StreamReadOptions.empty()
+                .count(config.getBatchSize())
+                .block(Duration.ofMillis(config.getBlockMillis()));
+        long nextClaimTime = 0;
+        while (running) {
+            try {
+                if (System.currentTimeMillis() >= nextClaimTime) {
+                    claimPending(consumerName);
+                    nextClaimTime = System.currentTimeMillis() + config.getClaimIntervalMillis();
+                }
+                List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream().read(
+                        consumer, readOptions, StreamOffset.create(config.getKey(), ReadOffset.lastConsumed()));
+                if (records == null || records.isEmpty()) {
+                    continue;
+                }
+                List<StreamOrder> orders = new ArrayList<>(records.size());
+                for (MapRecord<String, Object, Object> record : records) {
+                    Map<Object, Object> value = record.getValue();
+                    orders.add(new StreamOrder(record.getId().getValue(),
+                            String.valueOf(value.get(FIELD_USER_ID)),
+                            String.valueOf(value.get(FIELD_VOUCHER_ID)),
+                            String.valueOf(value.get(FIELD_ORDER_ID)),
+                            1));
+                }
+                handleOrders(orders);
+            } catch (Exception e) {
+                log.error("秒杀订单Stream消费异常，消费者：{}", consumerName, e);
+                try {
+                    TimeUnit.SECONDS.sleep(1);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 认领空闲超时的待确认消息(处理失败或消费者宕机遗留的消息)并重新处理
+     */
+    private void claimPending(String consumerName) {
+        SeckillConfig.Stream config = config();
+        String cursor = "0-0";
+        do {
+            List<Object> result = stringRedisTemplate.execute(AUTO_CLAIM_SCRIPT,
+                    Collections.singletonList(config.getKey()),
+                    config.getGroup(), consumerName, String.valueOf(config.getClaimMinIdleMillis()),
+                    cursor, String.valueOf(config.getBatchSize()));
+            if (result == null || result.isEmpty()) {
+                return;
+            }
+            cursor = String.valueOf(result.get(0));
+            List<StreamOrder> orders = new ArrayList<>();
+            for (int i = 1; i + 4 < result.size(); i += 5) {
+                orders.add(new StreamOrder(String.valueOf(result.get(i)),
+                        String.valueOf(result.get(i + 1)),
+                        String.valueOf(result.get(i + 2)),
+                        String.valueOf(result.get(i + 3)),
+                        ((Number) result.get(i + 4)).longValue()));
+            }
+            if (!orders.isEmpty()) {
+                log.info("认领超时未确认的秒杀订单消息，数量：{}", orders.size());
+                handleOrders(orders);
+            }
+        } while (running && !"0-0".equals(cursor));
+    }
+
+    /**
+     * 处理一批订单消息：按优惠券分组批量落库，分组失败时退回逐条处理，
+     * 处理成功(或转入死信)的消息确认并删除，失败的消息留待重新认领
+     */
+    private void handleOrders(List<StreamOrder> orders) {
+        SeckillConfig.Stream config = config();
+        List<String> ackIds = new ArrayList<>(orders.size());
+        Map<Long, List<StreamOrder>> groups = new LinkedHashMap<>();
+        for (StreamOrder order : orders) {
+            VoucherOrder voucherOrder = order.toVoucherOrder();
+            if (voucherOrder == null) {
+                // 无法解析的消息重试也没有意义，直接转入死信
+                log.error("秒杀订单消息无法解析，转入死信，消息ID：{}", order.recordId);
+                deadLetter(order);
+                ackIds.add(order.recordId);
+                continue;
+            }
+            order.voucherOrder = voucherOrder;
+            groups.computeIfAbsent(voucherOrder.getVoucherId(), k -> new ArrayList<>()).add(order);
+        }
+
+        for (Map.Entry<Long, List<StreamOrder>> group : groups.entrySet()) {
+            List<StreamOrder> groupOrders = group.getValue();
+            List<VoucherOrder> voucherOrders = new ArrayList<>(groupOrders.size());
+            groupOrders.forEach(o -> voucherOrders.add(o.voucherOrder));
+            try {
+                voucherOrderService.createVoucherOrders(group.getKey(), voucherOrders);
+                groupOrders.forEach(o -> ackIds.add(o.recordId));
+            } catch (Exception e) {
+                log.warn("批量处理秒杀订单失败，退回逐条处理，优惠券ID：{}，异常：{}", group.getKey(), e.getMessage());
+                for (StreamOrder order : groupOrders) {
+                    try {
+                        voucherOrderService.createVoucherOrder(order.voucherOrder);
+                        ackIds.add(order.recordId);
+                    } catch (Exception ex) {
+                        log.error("处理秒杀订单异常，订单ID：{}，投递次数：{}，异常：{}",
+                                order.orderId, order.deliveries, ex.getMessage());
+                        if (order.deliveries >= config.getMaxDeliveries()) {
+                            deadLetter(order);
+                            ackIds.add(order.recordId);
+                        }
+                    }
+                }
+            }
+        }
+
+        if (!ackIds.isEmpty()) {
+            String[] ids = ackIds.toArray(new String[0]);
+            stringRedisTemplate.opsForStream().acknowledge(config.getKey(), config.getGroup(), ids);
+            // 已确认的消息不再需要，删除以控制Stream长度
+            stringRedisTemplate.opsForStream().delete(config.getKey(), ids);
+        }
+    }
+
+    /**
+     * 转入死信Stream，保留原始字段便于人工排查和补偿
+     */
+    private void deadLetter(StreamOrder order) {
+        Map<String, String> fields = new HashMap<>(8);
+        fields.put(FIELD_USER_ID, order.userId);
+        fields.put(FIELD_VOUCHER_ID, order.voucherId);
+        fields.put(FIELD_ORDER_ID, order.orderId);
+        fields.put("sourceId", order.recordId);
+        fields.put("deliveries", String.valueOf(order.deliveries));
+        stringRedisTemplate.opsForStream().add(config().getDeadLetterKey(), fields);
+        log.warn("秒杀订单消息转入死信Stream，订单ID：{}，消息ID：{}", order.orderId, order.recordId);
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        if (consumerExecutor != null) {
+            consumerExecutor.shutdown();
+            consumerExecutor.awaitTermination(config().getBlockMillis() + 1000, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stream中的一条订单消息
+     */
+    private static class StreamOrder {
+        private final String recordId;
+        private final String userId;
+        private final String voucherId;
+        private final String orderId;
+        private final long deliveries;
+        private VoucherOrder voucherOrder;
+
+        StreamOrder(String recordId, String userId, String voucherId, String orderId, long deliveries) {
+            this.recordId = recordId;
+            this.userId = userId;
+            this.voucherId = voucherId;
+            this.orderId = orderId;
+            this.deliveries = deliveries;
+        }
+
+        /**
+         * 转换为订单，字段缺失或格式错误时返回null
+         */
+        VoucherOrder toVoucherOrder() {
+            try {
+                VoucherOrder voucherOrder = new VoucherOrder();
+                voucherOrder.setId(Long.valueOf(orderId));
+                voucherOrder.setUserId(Long.valueOf(userId));
+                voucherOrder.setVoucherId(Long.valueOf(voucherId));
+                voucherOrder.setProcessStatus(ORDER_STATUS_PENDING);
+                return voucherOrder;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+}
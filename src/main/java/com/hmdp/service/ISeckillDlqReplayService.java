@@ -0,0 +1,19 @@
+package com.hmdp.service;
+
+/**
+ * 秒杀死信订单重放服务接口
+ */
+public interface ISeckillDlqReplayService {
+    /**
+     * 分批取出死信队列中的订单消息并重新处理
+     * @param maxMessages 最多重放的消息数，0表示取空死信队列
+     * @return 本次取出的消息数
+     */
+    long replayDeadLetters(long maxMessages);
+
+    /**
+     * 死信订单重放任务(手动触发，任务参数为最多重放的消息数，为空时使用配置)
+     * @return 重放结果
+     */
+    boolean replayDeadLettersJob();
+}
@@ -0,0 +1,19 @@
+package com.hmdp.service;
+
+/**
+ * 秒杀活动生命周期服务接口
+ * 开始前预热库存和缓存，结束后对账并释放秒杀状态
+ */
+public interface ISeckillLifecycleService {
+    /**
+     * 预热即将开始的秒杀活动
+     * @return 预热结果
+     */
+    boolean prewarm();
+
+    /**
+     * 对账并释放已经结束的秒杀活动
+     * @return 释放结果
+     */
+    boolean teardown();
+}
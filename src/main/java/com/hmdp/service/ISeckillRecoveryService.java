@@ -0,0 +1,34 @@
+package com.hmdp.service;
+
+import java.util.List;
+
+/**
+ * 秒杀Redis状态恢复服务接口
+ */
+public interface ISeckillRecoveryService {
+    /**
+     * 按数据库重建秒杀库存和用户订单记录
+     * @param voucherIds 需要重建的优惠券ID，为空时重建所有未结束的秒杀活动
+     * @return 重建的订单数量
+     */
+    long rebuildSeckillState(List<Long> voucherIds);
+
+    /**
+     * 秒杀Redis状态重建任务(手动触发，任务参数为逗号分隔的优惠券ID，为空时重建全部)
+     * @return 重建结果
+     */
+    boolean rebuildSeckillStateJob();
+
+    /**
+     * 把旧版本加载的秒杀库存(没有库存元数据)迁移到按库存桶存放的布局
+     * @param voucherIds 需要迁移的优惠券ID，为空时迁移所有未结束的秒杀活动(已有元数据的跳过)
+     * @return 迁移的优惠券数量
+     */
+    long migrateLegacyState(List<Long> voucherIds);
+
+    /**
+     * 旧版本秒杀库存迁移任务(升级后手动执行一次，任务参数为逗号分隔的优惠券ID，为空时迁移全部)
+     * @return 迁移结果
+     */
+    boolean migrateLegacyStateJob();
+}
@@ -5,15 +5,32 @@ import com.hmdp.dto.Result;
 import com.hmdp.entity.VoucherOrder;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.List;
 
 public interface IVoucherOrderService extends IService<VoucherOrder> {
 
     Result seckillVoucher(Long voucherId);
 
     @NotNull
-    @Transactional(rollbackFor = Exception.class)
     Result getResult(Long voucherId);
 
+    DeferredResult<Result> waitResult(Long voucherId);
+
+    VoucherOrder getOrderById(Long orderId);
+
+    List<VoucherOrder> queryVoucherOrders(Long voucherId, Integer processStatus, int limit);
+
     @Transactional(rollbackFor = Exception.class)
     void createVoucherOrder(VoucherOrder voucherOrder);
+
+    @Transactional(rollbackFor = Exception.class)
+    List<VoucherOrder> createVoucherOrders(Long voucherId, List<VoucherOrder> voucherOrders);
+
+    @Transactional(rollbackFor = Exception.class)
+    List<VoucherOrder> replayVoucherOrders(Long voucherId, List<VoucherOrder> voucherOrders);
+
+    @Transactional(rollbackFor = Exception.class)
+    List<VoucherOrder> cancelUnpaidOrders(List<Long> orderIds);
 }
@@ -5,7 +5,6 @@ import com.hmdp.dto.CacheChangeMessage;
 import com.hmdp.utils.CacheClient;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
@@ -18,8 +17,6 @@ import java.time.Duration;
 @Slf4j
 @Service
 public class RedisCacheListenerServiceImpl {
-    @Resource
-    private StringRedisTemplate stringRedisTemplate;
     @Resource
     private CacheClient cacheClient;
 
@@ -38,13 +35,15 @@ public class RedisCacheListenerServiceImpl {
         try {
             switch (operation) {
                 case "delete":
-                    // 删除Redis缓存
-                    stringRedisTemplate.delete(key);
+                    // 删除Redis缓存(含旧值副本)
+                    cacheClient.deleteRedisCache(key);
                     log.info("已删除Redis缓存: {}", key);
                     break;
                 case "update":
                 case "insert":
                     if (data != null) {
+                        // 旧值副本是变更前的数据；缓存本身直接覆盖，不先删除，避免写入前的并发读取穿透到数据库
+                        cacheClient.deleteStaleCopy(key);
                         // 更新或新增Redis缓存
                         cacheClient.setWithLogicalExpire(
                                 key,
@@ -0,0 +1,255 @@
+package com.hmdp.service.impl;
+
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.config.RabbitMQConfig;
+import com.hmdp.config.SeckillConfig;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.ISeckillDlqReplayService;
+import com.hmdp.service.IVoucherOrderService;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.GetResponse;
+import com.xxl.job.core.context.XxlJobHelper;
+import com.xxl.job.core.handler.annotation.XxlJob;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.support.DefaultMessagePropertiesConverter;
+import org.springframework.amqp.rabbit.support.MessagePropertiesConverter;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.ORDER_STATUS_SUCCESS;
+
+/**
+ * 秒杀死信订单重放服务实现类
+ * 超过重试次数的订单进入 seckill.dlq，数据库短暂故障后可能积压大量死信；
+ * 本服务每次从死信队列取出一批消息，按优惠券分组后用一次查询校验已有订单，
+ * 再走批量创建订单的流程(一次插入、一次扣减库存)，整组处理成功后才确认消息；
+ * 重放速度受配置的速率限制，进度通过Micrometer指标暴露(seckill.dlq.replay.*)
+ */
+@Slf4j
+@Service
+public class SeckillDlqReplayServiceImpl implements ISeckillDlqReplayService {
+
+    private final RabbitTemplate rabbitTemplate;
+    private final IVoucherOrderService voucherOrderService;
+    private final SeckillConfig.DlqReplay config;
+    private final MessagePropertiesConverter propertiesConverter = new DefaultMessagePropertiesConverter();
+
+    private final Counter successCounter;
+    private final Counter failedCounter;
+    private final Counter skippedCounter;
+    private final Counter invalidCounter;
+    private final Timer batchTimer;
+    /**
+     * 死信队列剩余消息数(每批取完后更新)
+     */
+    private final AtomicLong remaining = new AtomicLong();
+    /**
+     * 本次任务已经取出的消息数
+     */
+    private final AtomicLong progress = new AtomicLong();
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    public SeckillDlqReplayServiceImpl(RabbitTemplate rabbitTemplate, IVoucherOrderService voucherOrderService,
+                                       SeckillConfig seckillConfig, MeterRegistry meterRegistry) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.voucherOrderService = voucherOrderService;
+        this.config = seckillConfig.getDlqReplay();
+        this.successCounter = replayCounter(meterRegistry, "success");
+        this.failedCounter = replayCounter(meterRegistry, "failed");
+        this.skippedCounter = replayCounter(meterRegistry, "skipped");
+        this.invalidCounter = replayCounter(meterRegistry, "invalid");
+        this.batchTimer = Timer.builder("seckill.dlq.replay.batch")
+                .description("每批死信订单的重放耗时")
+                .register(meterRegistry);
+        meterRegistry.gauge("seckill.dlq.replay.remaining", remaining);
+        meterRegistry.gauge("seckill.dlq.replay.progress", progress);
+        meterRegistry.gauge("seckill.dlq.replay.running", running, r -> r.get() ? 1 : 0);
+    }
+
+    private static Counter replayCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("seckill.dlq.replay.orders")
+                .description("重放的死信订单数")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 死信订单重放 - XXL-Job任务
+     * 不定时执行，数据库故障恢复后手动触发
+     */
+    @XxlJob("seckillDlqReplayJob")
+    @Override
+    public boolean replayDeadLettersJob() {
+        String param = XxlJobHelper.getJobParam();
+        long maxMessages = StrUtil.isBlank(param) ? config.getMaxMessages() : Long.parseLong(param.trim());
+        try {
+            long replayed = replayDeadLetters(maxMessages);
+            XxlJobHelper.log("死信订单重放完成，消息数: " + replayed + "，剩余: " + remaining.get());
+            return true;
+        } catch (Exception e) {
+            log.error("死信订单重放失败", e);
+            XxlJobHelper.log("死信订单重放失败: " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public long replayDeadLetters(long maxMessages) {
+        if (!running.compareAndSet(false, true)) {
+            log.warn("死信订单重放正在执行，忽略本次请求");
+            return 0;
+        }
+        progress.set(0);
+        long begin = System.currentTimeMillis();
+        try {
+            Long total = rabbitTemplate.execute(channel -> {
+                long taken = 0;
+                long batchBegin = System.nanoTime();
+                while (maxMessages <= 0 || taken < maxMessages) {
+                    int limit = (int) (maxMessages <= 0 ? config.getBatchSize()
+                            : Math.min(config.getBatchSize(), maxMessages - taken));
+                    List<GetResponse> batch = fetch(channel, limit);
+                    remaining.set(batch.isEmpty() ? 0 : batch.get(batch.size() - 1).getMessageCount());
+                    if (batch.isEmpty()) {
+                        break;
+                    }
+                    taken += batch.size();
+                    progress.set(taken);
+                    boolean ok = batchTimer.record(() -> replayBatch(channel, batch));
+                    if (!ok) {
+                        // 失败的消息已经退回死信队列，数据库可能仍不可用，停止本次重放
+                        break;
+                    }
+                    batchBegin = throttle(batchBegin, batch.size());
+                }
+                return taken;
+            });
+            long count = total == null ? 0 : total;
+            long millis = Math.max(1, System.currentTimeMillis() - begin);
+            log.info("死信订单重放结束，消息数: {}，剩余: {}，耗时: {}ms，速率: {}条/秒",
+                    count, remaining.get(), millis, count * 1000 / millis);
+            return count;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * 从死信队列取出最多limit条消息(手动确认)
+     */
+    private List<GetResponse> fetch(Channel channel, int limit) throws IOException {
+        List<GetResponse> batch = new ArrayList<>(limit);
+        for (int i = 0; i < limit; i++) {
+            GetResponse response = channel.basicGet(RabbitMQConfig.DEAD_LETTER_QUEUE, false);
+            if (response == null) {
+                break;
+            }
+            batch.add(response);
+        }
+        return batch;
+    }
+
+    /**
+     * 重放一批死信消息，按优惠券分组批量处理
+     * @return 是否全部处理成功
+     */
+    private boolean replayBatch(Channel channel, List<GetResponse> batch) {
+        Map<Long, List<GetResponse>> groups = new LinkedHashMap<>();
+        Map<GetResponse, VoucherOrder> orders = new LinkedHashMap<>();
+        for (GetResponse response : batch) {
+            VoucherOrder voucherOrder = convert(response);
+            if (voucherOrder == null || voucherOrder.getVoucherId() == null || voucherOrder.getUserId() == null) {
+                // 无法解析的消息重放也不会成功，记录消息内容后丢弃
+                log.error("死信消息无法解析，已丢弃，内容: {}", new String(response.getBody(), StandardCharsets.UTF_8));
+                invalidCounter.increment();
+                ackQuietly(channel, response.getEnvelope().getDeliveryTag());
+                continue;
+            }
+            orders.put(response, voucherOrder);
+            groups.computeIfAbsent(voucherOrder.getVoucherId(), k -> new ArrayList<>()).add(response);
+        }
+
+        boolean ok = true;
+        for (Map.Entry<Long, List<GetResponse>> group : groups.entrySet()) {
+            List<GetResponse> responses = group.getValue();
+            List<VoucherOrder> groupOrders = new ArrayList<>(responses.size());
+            responses.forEach(r -> groupOrders.add(orders.get(r)));
+            try {
+                List<VoucherOrder> replayed = voucherOrderService.replayVoucherOrders(group.getKey(), groupOrders);
+                long success = replayed.stream().filter(o -> o.getProcessStatus() == ORDER_STATUS_SUCCESS).count();
+                successCounter.increment(success);
+                failedCounter.increment(replayed.size() - success);
+                skippedCounter.increment(responses.size() - replayed.size());
+                responses.forEach(r -> ackQuietly(channel, r.getEnvelope().getDeliveryTag()));
+                log.info("死信订单重放完成，优惠券ID: {}，消息: {}，成功: {}，库存不足: {}，跳过: {}",
+                        group.getKey(), responses.size(), success, replayed.size() - success,
+                        responses.size() - replayed.size());
+            } catch (Exception e) {
+                ok = false;
+                log.error("死信订单重放失败，退回死信队列，优惠券ID: {}，消息: {}，异常: {}",
+                        group.getKey(), responses.size(), e.getMessage());
+                responses.forEach(r -> nackQuietly(channel, r.getEnvelope().getDeliveryTag()));
+            }
+        }
+        return ok;
+    }
+
+    private VoucherOrder convert(GetResponse response) {
+        try {
+            MessageProperties properties = propertiesConverter.toMessageProperties(
+                    response.getProps(), response.getEnvelope(), StandardCharsets.UTF_8.name());
+            Object body = rabbitTemplate.getMessageConverter().fromMessage(new Message(response.getBody(), properties));
+            return body instanceof VoucherOrder ? (VoucherOrder) body : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * 按配置的速率限制重放速度：本批用时不足 批大小/速率 时等待剩余时间
+     * @return 下一批的开始时间
+     */
+    private long throttle(long batchBegin, int batchSize) {
+        long minNanos = TimeUnit.SECONDS.toNanos(batchSize) / Math.max(1, config.getRatePerSecond());
+        long waitNanos = minNanos - (System.nanoTime() - batchBegin);
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return System.nanoTime();
+    }
+
+    private void ackQuietly(Channel channel, long deliveryTag) {
+        try {
+            channel.basicAck(deliveryTag, false);
+        } catch (IOException e) {
+            log.error("死信消息确认失败，消息ID：{}，异常：{}", deliveryTag, e.getMessage());
+        }
+    }
+
+    private void nackQuietly(Channel channel, long deliveryTag) {
+        try {
+            channel.basicNack(deliveryTag, false, true);
+        } catch (IOException e) {
+            log.error("死信消息退回失败，消息ID：{}，异常：{}", deliveryTag, e.getMessage());
+        }
+    }
+}
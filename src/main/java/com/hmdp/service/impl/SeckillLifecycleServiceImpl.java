@@ -0,0 +1,217 @@
+package com.hmdp.service.impl;
+
+import com.hmdp.config.SeckillConfig;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.Voucher;
+import com.hmdp.service.ISeckillLifecycleService;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.service.IShopService;
+import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.SeckillAdmissionBatcher;
+import com.hmdp.utils.SeckillStockRouter;
+import com.hmdp.utils.SeckillWaitingRoom;
+import com.hmdp.utils.SoldOutRegistry;
+import com.hmdp.utils.StockDeductionCombiner;
+import com.hmdp.utils.StockInitializer;
+import com.xxl.job.core.context.XxlJobHelper;
+import com.xxl.job.core.handler.annotation.XxlJob;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TTL;
+import static com.hmdp.utils.RedisConstants.VOUCHER_CACHE_KEY;
+import static com.hmdp.utils.RedisConstants.VOUCHER_CACHE_TTL;
+
+/**
+ * 秒杀活动生命周期服务实现类
+ * 两个任务都以分片广播方式执行：Redis中的共享状态(库存、缓存、排队记录)只由0号分片处理，
+ * 本地状态(布隆过滤器、本地缓存、售罄标记、微批和合并通道)由每个节点各自处理
+ */
+@Slf4j
+@Service
+public class SeckillLifecycleServiceImpl implements ISeckillLifecycleService {
+
+    @Resource
+    private ISeckillVoucherService seckillVoucherService;
+
+    @Resource
+    private IVoucherService voucherService;
+
+    @Resource
+    private IShopService shopService;
+
+    @Resource
+    private StockInitializer stockInitializer;
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private SoldOutRegistry soldOutRegistry;
+
+    @Resource
+    private SeckillAdmissionBatcher seckillAdmissionBatcher;
+
+    @Resource
+    private StockDeductionCombiner stockDeductionCombiner;
+
+    @Resource
+    private SeckillStockRouter seckillStockRouter;
+
+    @Resource
+    private SeckillWaitingRoom seckillWaitingRoom;
+
+    @Resource
+    private SeckillConfig seckillConfig;
+
+    /**
+     * 秒杀活动预热 - XXL-Job定时任务
+     * 每分钟执行一次，在开始前加载库存，预热布隆过滤器、优惠券缓存和店铺缓存
+     */
+    @XxlJob("seckillPrewarmJob")
+    @Override
+    public boolean prewarm() {
+        SeckillConfig.Lifecycle config = seckillConfig.getLifecycle();
+        LocalDateTime now = LocalDateTime.now();
+        boolean primary = XxlJobHelper.getShardIndex() == 0;
+        try {
+            List<SeckillVoucher> seckillVouchers = seckillVoucherService.lambdaQuery()
+                    .gt(SeckillVoucher::getBeginTime, now)
+                    .le(SeckillVoucher::getBeginTime, now.plusMinutes(config.getPrewarmLeadMinutes()))
+                    .list();
+            // 本节点的布隆过滤器和本地缓存，开始时的查询不再穿透到Redis和数据库；优惠券缓存批量加载
+            List<Long> voucherIds = seckillVouchers.stream()
+                    .map(SeckillVoucher::getVoucherId)
+                    .collect(Collectors.toList());
+            voucherIds.forEach(voucherId -> cacheClient.addToBloomFilter(VOUCHER_CACHE_KEY + voucherId));
+            List<Voucher> vouchers = cacheClient.queryAllWithMultiLevelCache(VOUCHER_CACHE_KEY, voucherIds, Voucher.class,
+                    ids -> voucherService.listByIds(ids).stream()
+                            .collect(Collectors.toMap(Voucher::getId, Function.identity())),
+                    VOUCHER_CACHE_TTL, TimeUnit.SECONDS);
+            int loaded = 0;
+            for (int i = 0; i < seckillVouchers.size(); i++) {
+                SeckillVoucher seckillVoucher = seckillVouchers.get(i);
+                try {
+                    if (prewarmVoucher(seckillVoucher, vouchers.get(i), primary)) {
+                        loaded++;
+                    }
+                } catch (Exception e) {
+                    log.error("秒杀活动预热失败，优惠券ID: {}", seckillVoucher.getVoucherId(), e);
+                }
+            }
+            log.info("秒杀活动预热完成，即将开始的活动: {}，加载库存: {}", seckillVouchers.size(), loaded);
+            return true;
+        } catch (Exception e) {
+            log.error("秒杀活动预热失败", e);
+            return false;
+        }
+    }
+
+    /**
+     * 预热单个秒杀活动
+     * @return 是否加载了库存
+     */
+    private boolean prewarmVoucher(SeckillVoucher seckillVoucher, Voucher voucher, boolean primary) {
+        Long voucherId = seckillVoucher.getVoucherId();
+        // 1. 店铺的布隆过滤器
+        if (voucher != null) {
+            cacheClient.addToBloomFilter(CACHE_SHOP_KEY + voucher.getShopId());
+        }
+        if (!primary) {
+            return false;
+        }
+
+        // 2. 店铺缓存，店铺详情使用逻辑过期，需要提前写入
+        if (voucher != null) {
+            Shop shop = shopService.getById(voucher.getShopId());
+            if (shop != null) {
+                cacheClient.setWithLogicalExpire(CACHE_SHOP_KEY + shop.getId(), shop, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+            }
+        }
+
+        // 3. 按本次活动的时间窗口加载库存，已经加载过的不再覆盖(避免覆盖已经开始扣减的库存)
+        boolean loaded = stockInitializer.prepareStock(voucherId, seckillVoucher.getStock(), seckillVoucher.getStockMode(),
+                seckillVoucher.getBeginTime(), seckillVoucher.getEndTime(), seckillVoucher.getStockBuckets());
+
+        // 4. 排队从秒杀开始时间起放行
+        if (seckillWaitingRoom.isEnabled()) {
+            seckillWaitingRoom.open(voucherId);
+        }
+        return loaded;
+    }
+
+    /**
+     * 秒杀活动结束释放 - XXL-Job定时任务
+     * 每分钟执行一次，活动结束一段时间(订单消息消费完)后核对Redis剩余库存与数据库库存，再释放秒杀状态
+     */
+    @XxlJob("seckillTeardownJob")
+    @Override
+    public boolean teardown() {
+        SeckillConfig.Lifecycle config = seckillConfig.getLifecycle();
+        LocalDateTime now = LocalDateTime.now();
+        boolean primary = XxlJobHelper.getShardIndex() == 0;
+        try {
+            List<SeckillVoucher> seckillVouchers = seckillVoucherService.lambdaQuery()
+                    .ge(SeckillVoucher::getEndTime, now.minusHours(config.getTeardownLookbackHours()))
+                    .le(SeckillVoucher::getEndTime, now.minusMinutes(config.getTeardownDelayMinutes()))
+                    .list();
+            int released = 0;
+            for (SeckillVoucher seckillVoucher : seckillVouchers) {
+                Long voucherId = seckillVoucher.getVoucherId();
+                try {
+                    // 本节点的内存状态
+                    soldOutRegistry.release(voucherId);
+                    seckillAdmissionBatcher.release(voucherId);
+                    seckillStockRouter.release(voucherId);
+                    stockDeductionCombiner.release(voucherId);
+                    seckillWaitingRoom.release(voucherId);
+                    if (primary && stockInitializer.isLoaded(voucherId)) {
+                        reconcile(seckillVoucher);
+                        stockInitializer.releaseStock(voucherId);
+                        seckillWaitingRoom.clear(voucherId);
+                        released++;
+                    }
+                } catch (Exception e) {
+                    log.error("秒杀活动释放失败，优惠券ID: {}", voucherId, e);
+                }
+            }
+            log.info("秒杀活动释放完成，已结束的活动: {}，释放Redis状态: {}", seckillVouchers.size(), released);
+            return true;
+        } catch (Exception e) {
+            log.error("秒杀活动释放失败", e);
+            return false;
+        }
+    }
+
+    /**
+     * 核对Redis剩余库存与数据库库存，不一致时记录告警日志(丢失或重复的订单需要人工处理)
+     * 分桶的优惠券跨桶借库存时，借出和记录订单是两次调用，进程在两者之间崩溃会使Redis库存比数据库少，
+     * 这是Redis库存偏少的已知原因，一并在日志中说明
+     */
+    private void reconcile(SeckillVoucher seckillVoucher) {
+        Long voucherId = seckillVoucher.getVoucherId();
+        long redisStock = stockInitializer.getRemainingStock(voucherId);
+        SeckillVoucher latest = seckillVoucherService.getById(voucherId);
+        long dbStock = latest == null || latest.getStock() == null ? 0 : latest.getStock();
+        if (redisStock < dbStock && stockInitializer.getBucketCount(voucherId) > 1) {
+            log.warn("秒杀库存对账不一致，优惠券ID: {}，Redis剩余库存: {}，数据库剩余库存: {}，差额: {}"
+                            + "(已知原因：跨桶借出库存后、记录订单前进程崩溃，借出的库存未归还)",
+                    voucherId, redisStock, dbStock, dbStock - redisStock);
+        } else if (redisStock != dbStock) {
+            log.warn("秒杀库存对账不一致，优惠券ID: {}，Redis剩余库存: {}，数据库剩余库存: {}，差额: {}",
+                    voucherId, redisStock, dbStock, dbStock - redisStock);
+        } else {
+            log.info("秒杀库存对账一致，优惠券ID: {}，剩余库存: {}", voucherId, redisStock);
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package com.hmdp.service.impl;
+
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.config.SeckillConfig;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.mapper.SeckillVoucherMapper;
+import com.hmdp.mapper.VoucherOrderMapper;
+import com.hmdp.service.ISeckillRecoveryService;
+import com.hmdp.utils.SeckillOrderRecordWriter;
+import com.hmdp.utils.StockInitializer;
+import com.hmdp.utils.VoucherOrderSharding;
+import com.xxl.job.core.context.XxlJobHelper;
+import com.xxl.job.core.handler.annotation.XxlJob;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+import org.springframework.data.redis.connection.DataType;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_QUEUE_KEY;
+
+/**
+ * 秒杀Redis状态恢复服务实现类
+ * Redis主从切换丢失最近的写入后，库存和用户订单记录会与数据库不一致(可能超卖或重复下单)，
+ * 由本服务按数据库重建：游标流式读取订单，在内存中拼出用户订单记录位图后批量合并到Redis，
+ * 再按数据库剩余库存重新加载库存；多个优惠券并行重建
+ *
+ * 数据库中的订单和库存扣减在同一个事务中完成，重建后两者一致；
+ * 重建时还在消息队列中的订单，落库时由数据库的条件扣减和唯一索引兜底
+ */
+@Slf4j
+@Service
+public class SeckillRecoveryServiceImpl implements ISeckillRecoveryService {
+
+    @Resource
+    private SeckillVoucherMapper seckillVoucherMapper;
+
+    @Resource
+    private VoucherOrderMapper voucherOrderMapper;
+
+    @Resource
+    private StockInitializer stockInitializer;
+
+    @Resource
+    private SeckillOrderRecordWriter seckillOrderRecordWriter;
+
+    @Resource
+    private SeckillConfig seckillConfig;
+
+    @Resource
+    private VoucherOrderSharding voucherOrderSharding;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 游标只在事务(同一个数据库连接)内有效，未经过数据源切面的线程使用主库
+     */
+    private final TransactionTemplate transactionTemplate;
+
+    public SeckillRecoveryServiceImpl(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    /**
+     * 秒杀Redis状态重建 - XXL-Job任务
+     * 不定时执行，Redis故障切换后手动触发
+     */
+    @XxlJob("seckillStateRebuildJob")
+    @Override
+    public boolean rebuildSeckillStateJob() {
+        List<Long> voucherIds = jobVoucherIds();
+        try {
+            rebuildSeckillState(voucherIds);
+            return true;
+        } catch (Exception e) {
+            log.error("秒杀Redis状态重建失败", e);
+            XxlJobHelper.log("秒杀Redis状态重建失败: " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public long rebuildSeckillState(List<Long> voucherIds) {
+        long begin = System.currentTimeMillis();
+        List<SeckillVoucher> seckillVouchers = loadSeckillVouchers(voucherIds);
+        if (seckillVouchers.isEmpty()) {
+            log.info("没有需要重建的秒杀活动");
+            return 0;
+        }
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(seckillConfig.getRebuild().getThreads(), seckillVouchers.size()), r -> {
+                    Thread thread = new Thread(r, "seckill-rebuild-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        long orders = 0;
+        int failed = 0;
+        try {
+            List<Future<Long>> futures = new ArrayList<>(seckillVouchers.size());
+            for (SeckillVoucher seckillVoucher : seckillVouchers) {
+                futures.add(executor.submit(() -> rebuildVoucher(seckillVoucher)));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    orders += futures.get(i).get();
+                } catch (Exception e) {
+                    failed++;
+                    log.error("秒杀Redis状态重建失败，优惠券ID: {}", seckillVouchers.get(i).getVoucherId(), e);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long millis = Math.max(1, System.currentTimeMillis() - begin);
+        String report = StrUtil.format("秒杀Redis状态重建完成，优惠券: {}，失败: {}，订单: {}，耗时: {}ms，速率: {}单/秒",
+                seckillVouchers.size(), failed, orders, millis, orders * 1000 / millis);
+        log.info(report);
+        XxlJobHelper.log(report);
+        if (failed > 0) {
+            throw new IllegalStateException("部分优惠券重建失败，数量: " + failed);
+        }
+        return orders;
+    }
+
+    /**
+     * 重建单个优惠券：先合并用户订单记录，再加载库存，
+     * 避免库存已经恢复而订单记录还没有恢复时，同一用户再次抢到
+     * @return 重建的订单数量
+     */
+    private long rebuildVoucher(SeckillVoucher seckillVoucher) {
+        Long voucherId = seckillVoucher.getVoucherId();
+        long begin = System.currentTimeMillis();
+        long ttlMillis = seckillVoucher.getEndTime() == null ? -1
+                : stockInitializer.getStockExpireAt(seckillVoucher.getEndTime()) - System.currentTimeMillis();
+        // 用户订单记录按库存桶存放，桶数量以数据库为准(Redis元数据可能随故障切换一起丢失)
+        int buckets = seckillVoucher.getStockBuckets() == null ? 1 : Math.max(seckillVoucher.getStockBuckets(), 1);
+        Long orders = transactionTemplate.execute(status -> {
+            long count = 0;
+            // 订单分表时逐个分表读取，位图按分片合并，多次写入不会互相覆盖
+            for (int shard = 0; shard < voucherOrderSharding.getShardCount(); shard++) {
+                count += voucherOrderSharding.onShard(shard, () -> {
+                    try (Cursor<Long> userIds = voucherOrderMapper.selectUserIdCursor(voucherId)) {
+                        return seckillOrderRecordWriter.write(voucherId, buckets, userIds.iterator(), ttlMillis);
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+            }
+            return count;
+        });
+        // 读取订单期间消费者可能还在扣减库存，加载前重新查询剩余库存
+        SeckillVoucher latest = seckillVoucherMapper.selectById(voucherId);
+        int stock = latest == null || latest.getStock() == null ? 0 : latest.getStock();
+        stockInitializer.initStock(voucherId, stock, seckillVoucher.getStockMode(),
+                seckillVoucher.getBeginTime(), seckillVoucher.getEndTime(), seckillVoucher.getStockBuckets());
+        long count = orders == null ? 0 : orders;
+        long millis = Math.max(1, System.currentTimeMillis() - begin);
+        log.info("优惠券Redis状态重建完成，优惠券ID: {}，剩余库存: {}，订单: {}，耗时: {}ms，速率: {}单/秒",
+                voucherId, stock, count, millis, count * 1000 / millis);
+        return count;
+    }
+
+    /**
+     * 旧版本秒杀库存迁移 - XXL-Job任务
+     * 升级后手动执行一次：旧版本加载的库存没有元数据，新版本按库存未加载处理(既不放行也不标记售罄)，迁移后恢复秒杀
+     */
+    @XxlJob("seckillLegacyMigrateJob")
+    @Override
+    public boolean migrateLegacyStateJob() {
+        try {
+            long migrated = migrateLegacyState(jobVoucherIds());
+            XxlJobHelper.log("旧版本秒杀库存迁移完成，优惠券: " + migrated);
+            return true;
+        } catch (Exception e) {
+            log.error("旧版本秒杀库存迁移失败", e);
+            XxlJobHelper.log("旧版本秒杀库存迁移失败: " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public long migrateLegacyState(List<Long> voucherIds) {
+        long migrated = 0;
+        for (SeckillVoucher seckillVoucher : loadSeckillVouchers(voucherIds)) {
+            if (stockInitializer.isLoaded(seckillVoucher.getVoucherId())) {
+                continue;
+            }
+            migrateVoucher(seckillVoucher);
+            migrated++;
+        }
+        log.info("旧版本秒杀库存迁移完成，优惠券: {}", migrated);
+        return migrated;
+    }
+
+    /**
+     * 迁移单个优惠券：旧版本的库存key为 seckill:queue:{voucherId}(库存队列或计数器)，
+     * 用户订单记录为集合 seckill:order:{voucherId}；先把集合中的用户写入按桶分片的位图，再按旧库存key的剩余库存加载库存，
+     * 最后删除旧key。迁移期间该优惠券的秒杀请求返回库存未加载，旧库存不会变化
+     */
+    private void migrateVoucher(SeckillVoucher seckillVoucher) {
+        Long voucherId = seckillVoucher.getVoucherId();
+        String legacyStockKey = SECKILL_QUEUE_KEY + voucherId;
+        String legacyOrderKey = SECKILL_ORDER_KEY + voucherId;
+        int buckets = seckillVoucher.getStockBuckets() == null ? 1 : Math.max(seckillVoucher.getStockBuckets(), 1);
+        long ttlMillis = seckillVoucher.getEndTime() == null ? -1
+                : stockInitializer.getStockExpireAt(seckillVoucher.getEndTime()) - System.currentTimeMillis();
+
+        // 1. 用户订单记录
+        long users = 0;
+        if (stringRedisTemplate.type(legacyOrderKey) == DataType.SET) {
+            try (org.springframework.data.redis.core.Cursor<String> members = stringRedisTemplate.opsForSet()
+                    .scan(legacyOrderKey, ScanOptions.scanOptions().count(1000).build())) {
+                Iterator<Long> userIds = new Iterator<Long>() {
+                    @Override
+                    public boolean hasNext() {
+                        return members.hasNext();
+                    }
+
+                    @Override
+                    public Long next() {
+                        return Long.valueOf(members.next());
+                    }
+                };
+                users = seckillOrderRecordWriter.write(voucherId, buckets, userIds, ttlMillis);
+            }
+        }
+
+        // 2. 剩余库存：旧库存key不存在时，已经开始的活动按卖完处理，未开始的按数据库库存加载
+        DataType type = stringRedisTemplate.type(legacyStockKey);
+        String mode = seckillVoucher.getStockMode();
+        int stock;
+        if (type == DataType.LIST) {
+            Long size = stringRedisTemplate.opsForList().size(legacyStockKey);
+            stock = size == null ? 0 : size.intValue();
+            mode = StrUtil.isBlank(mode) ? "list" : mode;
+        } else if (type == DataType.STRING) {
+            String value = stringRedisTemplate.opsForValue().get(legacyStockKey);
+            stock = value == null ? 0 : Math.max(Integer.parseInt(value), 0);
+            mode = StrUtil.isBlank(mode) ? "counter" : mode;
+        } else if (seckillVoucher.getBeginTime() != null && seckillVoucher.getBeginTime().isAfter(LocalDateTime.now())) {
+            stock = seckillVoucher.getStock() == null ? 0 : seckillVoucher.getStock();
+        } else {
+            stock = 0;
+            log.warn("旧版本库存key不存在，按卖完迁移，Redis数据丢失时请执行秒杀Redis状态重建任务，优惠券ID: {}", voucherId);
+        }
+        stockInitializer.initStock(voucherId, stock, mode,
+                seckillVoucher.getBeginTime(), seckillVoucher.getEndTime(), seckillVoucher.getStockBuckets());
+
+        // 3. 删除旧key
+        stringRedisTemplate.delete(Arrays.asList(legacyStockKey, legacyOrderKey));
+        log.info("旧版本秒杀库存迁移完成，优惠券ID: {}，剩余库存: {}，用户订单记录: {}，库存桶: {}",
+                voucherId, stock, users, buckets);
+    }
+
+    /**
+     * 任务参数中的优惠券ID(逗号分隔)，为空时返回空列表
+     */
+    private List<Long> jobVoucherIds() {
+        List<Long> voucherIds = new ArrayList<>();
+        String param = XxlJobHelper.getJobParam();
+        if (StrUtil.isNotBlank(param)) {
+            for (String id : StrUtil.split(param, ',', true, true)) {
+                voucherIds.add(Long.valueOf(id));
+            }
+        }
+        return voucherIds;
+    }
+
+    /**
+     * 查询需要重建的秒杀活动，未指定时为所有未结束的活动
+     */
+    private List<SeckillVoucher> loadSeckillVouchers(List<Long> voucherIds) {
+        if (voucherIds != null && !voucherIds.isEmpty()) {
+            return seckillVoucherMapper.selectBatchIds(voucherIds);
+        }
+        List<SeckillVoucher> seckillVouchers = new ArrayList<>();
+        transactionTemplate.executeWithoutResult(status -> {
+            try (Cursor<SeckillVoucher> cursor = seckillVoucherMapper.selectEndAfterCursor(LocalDateTime.now())) {
+                cursor.forEach(seckillVouchers::add);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        return seckillVouchers;
+    }
+}
@@ -3,7 +3,6 @@ package com.hmdp.service.impl;
 import cn.hutool.core.util.BooleanUtil;
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSON;
-import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.dto.Result;
@@ -11,6 +10,7 @@ import com.hmdp.entity.Shop;
 import com.hmdp.mapper.ShopMapper;
 import com.hmdp.service.IShopService;
 
+import com.hmdp.utils.CacheClient;
 import com.hmdp.utils.RedisData;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
@@ -30,6 +30,8 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
 
     @Resource
     StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private CacheClient cacheClient;
     private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
 
 //    public Result queryById(Long id) {
@@ -84,16 +86,15 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
      */
     public Result queryById(Long id) {
         String key = CACHE_SHOP_KEY + id;
-        // 1.从redis查询商铺缓存
-        String shopJson = stringRedisTemplate.opsForValue().get(key);
+        // 1.从redis查询商铺缓存，一次解码出逻辑过期时间和店铺信息
+        RedisData redisData = cacheClient.getWithLogicalExpire(key, Shop.class);
         // 2.判断是否存在
-        if (StrUtil.isBlank(shopJson)) {
+        if (redisData == null) {
             // 3.不存在，直接返回
             return null;
         }
-        // 4.命中，需要先把json反序列化为对象
-        RedisData redisData = JSONUtil.toBean(shopJson, RedisData.class);
-        Shop shop = JSONUtil.toBean((JSONObject) redisData.getData(), Shop.class);
+        // 4.命中
+        Shop shop = (Shop) redisData.getData();
         LocalDateTime expireTime = redisData.getExpireTime();
         // 5.判断是否过期
         if(expireTime.isAfter(LocalDateTime.now())) {
@@ -131,8 +132,8 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         }
         // 1.更新数据库
         updateById(shop);
-        // 2.删除缓存
-        stringRedisTemplate.delete(CACHE_SHOP_KEY + shop.getId());
+        // 2.删除缓存(含旧值副本)
+        cacheClient.deleteRedisCache(CACHE_SHOP_KEY + shop.getId());
         return Result.ok();
     }
     private boolean tryLock(String key) {
@@ -144,12 +145,8 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
     public void saveShop2Redis(Long id, Long expireSeconds) {
         // 1. 查询店铺数据
         Shop shop = getById(id);
-        // 2. 封装逻辑过期时间
-        RedisData redisData = new RedisData();
-        redisData.setData(shop);
-        redisData.setExpireTime(LocalDateTime.now().plusSeconds(expireSeconds));
-        // 3. 写入Redis
-        stringRedisTemplate.opsForValue().set(CACHE_SHOP_KEY + id, JSONUtil.toJsonStr(redisData));
+        // 2. 封装逻辑过期时间并写入Redis
+        cacheClient.setWithLogicalExpire(CACHE_SHOP_KEY + id, shop, expireSeconds, TimeUnit.SECONDS);
     }
     private void unlock(String key) {
         stringRedisTemplate.delete(key);
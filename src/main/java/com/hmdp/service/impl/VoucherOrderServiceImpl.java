@@ -4,21 +4,29 @@ import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.config.RabbitMQConfig;
+import com.hmdp.config.SeckillConfig;
 import com.hmdp.dto.Result;
 import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.entity.VoucherOrder;
+import com.hmdp.mapper.SeckillVoucherMapper;
 import com.hmdp.mapper.VoucherOrderMapper;
+import com.hmdp.mq.OrderTransport;
+import com.hmdp.mq.SeckillConsumerTuner;
+import com.hmdp.mq.SeckillPartitionConsumerManager;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
 import com.hmdp.utils.CacheClient;
-import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.SeckillResultNotifier;
+import com.hmdp.utils.SeckillStockRouter;
+import com.hmdp.utils.SoldOutRegistry;
+import com.hmdp.utils.StockDeductionCombiner;
 import com.hmdp.utils.StockInitializer;
+import com.hmdp.utils.UnpaidOrderCanceller;
 import com.hmdp.utils.UserHolder;
+import com.hmdp.utils.VoucherOrderSharding;
 import lombok.extern.slf4j.Slf4j;
 import org.jetbrains.annotations.NotNull;
-import org.redisson.api.RLock;
-import org.redisson.api.RedissonClient;
 import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
@@ -28,15 +36,24 @@ import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.context.request.async.DeferredResult;
 import com.rabbitmq.client.Channel;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 import java.io.IOException;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.*;
 
@@ -46,9 +63,7 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     @Resource
     private ISeckillVoucherService seckillVoucherService;
     @Resource
-    private RedisIdWorker redisIdWorker;
-    @Resource
-    private RedissonClient redissonClient;
+    private SeckillVoucherMapper seckillVoucherMapper;
     @Resource
     private StringRedisTemplate stringRedisTemplate;
     @Resource
@@ -57,6 +72,32 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     private CacheClient cacheClient;
     @Resource
     private StockInitializer stockInitializer;
+    @Resource
+    private SoldOutRegistry soldOutRegistry;
+    @Resource
+    private SeckillStockRouter seckillStockRouter;
+    @Resource
+    private SeckillResultNotifier seckillResultNotifier;
+    @Resource
+    private StockDeductionCombiner stockDeductionCombiner;
+    @Resource
+    private List<OrderTransport> orderTransports;
+    @Resource
+    private SeckillConfig seckillConfig;
+    @Resource
+    private SeckillPartitionConsumerManager seckillPartitionConsumerManager;
+
+    @Resource
+    private SeckillConsumerTuner seckillConsumerTuner;
+    @Resource
+    private VoucherOrderSharding voucherOrderSharding;
+    @Resource
+    private UnpaidOrderCanceller unpaidOrderCanceller;
+
+    /**
+     * 当前使用的订单传输方式
+     */
+    private OrderTransport orderTransport;
     
     /**
      * 自己注入自己为了获取代理对象 @Lazy 延迟注入 避免形成循环依赖
@@ -66,7 +107,6 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     private IVoucherOrderService voucherOrderService;
     
     private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
-    private static final DefaultRedisScript<Long> QUEUE_SECKILL_SCRIPT;
     private static final ExecutorService SECKILL_ORDER_EXECUTOR = Executors.newSingleThreadExecutor();
     // 添加最大重试次数常量
     private static final int MAX_RETRIES = 3;
@@ -76,11 +116,38 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         SECKILL_SCRIPT = new DefaultRedisScript<>();
         SECKILL_SCRIPT.setLocation(new ClassPathResource("seckill.lua"));
         SECKILL_SCRIPT.setResultType(Long.class);
-        
-        // 初始化队列脚本
-        QUEUE_SECKILL_SCRIPT = new DefaultRedisScript<>();
-        QUEUE_SECKILL_SCRIPT.setLocation(new ClassPathResource("queue_seckill.lua"));
-        QUEUE_SECKILL_SCRIPT.setResultType(Long.class);
+    }
+
+    /**
+     * 根据配置选择订单传输方式
+     */
+    @PostConstruct
+    private void initOrderTransport() {
+        String name = seckillConfig.getOrder().getTransport();
+        orderTransport = orderTransports.stream()
+                .filter(transport -> transport.getName().equals(name))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("不支持的订单传输方式：" + name));
+        log.info("秒杀订单传输方式：{}", name);
+    }
+
+    /**
+     * 注册分区队列的订单消息处理方法，与 listenSeckillOrder 的处理流程相同
+     */
+    @PostConstruct
+    private void registerPartitionListener() {
+        seckillPartitionConsumerManager.setMessageListener((message, channel) -> {
+            VoucherOrder voucherOrder;
+            try {
+                voucherOrder = (VoucherOrder) rabbitTemplate.getMessageConverter().fromMessage(message);
+            } catch (Exception e) {
+                // 无法解析的消息重试也没有意义，直接进入死信队列
+                log.error("秒杀订单消息无法解析，进入死信队列，消息ID：{}", message.getMessageProperties().getDeliveryTag(), e);
+                nackQuietly(channel, message.getMessageProperties().getDeliveryTag());
+                return;
+            }
+            listenSeckillOrder(voucherOrder, channel, message);
+        });
     }
 
     /**
@@ -103,42 +170,31 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
      * RabbitMQ消息监听器，处理秒杀订单
      * @param voucherOrder 优惠券订单
      */
-    @RabbitListener(queues = RabbitMQConfig.QUEUE_NAME)
+    @RabbitListener(id = RabbitMQConfig.SECKILL_ORDER_LISTENER_ID, queues = RabbitMQConfig.QUEUE_NAME,
+            containerFactory = RabbitMQConfig.SECKILL_ORDER_CONTAINER_FACTORY,
+            autoStartup = "#{!${seckill.order.batch.enabled:false}}")
     public void listenSeckillOrder(VoucherOrder voucherOrder, Channel channel, Message message) {
         long deliveryTag = message.getMessageProperties().getDeliveryTag();
+        if (stockDeductionCombiner.isEnabled()) {
+            // 交给合并器与同一优惠券的其他订单一起扣减库存，处理完成后再确认消息
+            log.info("接收到秒杀订单消息，提交合并扣减：{}", voucherOrder);
+            stockDeductionCombiner.submit(voucherOrder).whenComplete((status, e) -> {
+                if (e != null) {
+                    log.error("处理秒杀订单异常，订单ID：{}，异常：{}", voucherOrder.getId(), e.getMessage());
+                    handleFailedDelivery(voucherOrder, channel, message);
+                    return;
+                }
+                try {
+                    channel.basicAck(deliveryTag, false);
+                } catch (IOException ex) {
+                    log.error("消息确认失败，消息ID：{}，异常：{}", deliveryTag, ex.getMessage());
+                }
+            });
+            return;
+        }
         try {
             log.info("接收到秒杀订单消息：{}", voucherOrder);
 
-            // 检查订单是否已经处理过（幂等性检查）
-            Long userId = voucherOrder.getUserId();
-            Long voucherId = voucherOrder.getVoucherId();
-            // 使用多级缓存查询订单
-            String cacheKey = VOUCHER_ORDER_CACHE_KEY + "user:" + userId + ":voucher:" + voucherId;
-            
-            // 先查多级缓存
-            VoucherOrder existOrder = cacheClient.queryWithMultiLevelCache(
-                cacheKey,
-                userId + ":" + voucherId,
-                VoucherOrder.class,
-                k -> {
-                    // 缓存未命中时查询数据库
-                    return getBaseMapper().selectOne(
-                        new LambdaQueryWrapper<VoucherOrder>()
-                            .eq(VoucherOrder::getUserId, userId)
-                            .eq(VoucherOrder::getVoucherId, voucherId)
-                            .last("LIMIT 1")
-                    );
-                },
-                VOUCHER_ORDER_CACHE_TTL,
-                TimeUnit.SECONDS
-            );
-
-            if (existOrder != null && existOrder.getProcessStatus() != ORDER_STATUS_PENDING) {
-                log.info("订单已处理，跳过重复处理，订单ID：{}", existOrder.getId());
-                channel.basicAck(deliveryTag, false);
-                return;
-            }
-
             // 处理订单
             handleVoucherOrder(voucherOrder);
             // 手动确认消息
@@ -146,69 +202,154 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
             log.info("订单处理成功，消息已确认：{}", deliveryTag);
         } catch (Exception e) {
             log.error("处理秒杀订单异常，订单ID：{}，异常：{}", voucherOrder.getId(), e.getMessage());
+            handleFailedDelivery(voucherOrder, channel, message);
+        }
+    }
+
+    /**
+     * 消息处理失败：未超过重试次数则重新入队，否则进入死信队列
+     * @param voucherOrder 订单信息
+     * @param channel 通道
+     * @param message 消息对象
+     */
+    private void handleFailedDelivery(VoucherOrder voucherOrder, Channel channel, Message message) {
+        long deliveryTag = message.getMessageProperties().getDeliveryTag();
+        try {
+            // 判断消息是否已经被重试
+            int retryCount = getRetryCount(message);
+            if (retryCount < MAX_RETRIES) {
+                // 消息重试
+                channel.basicNack(deliveryTag, false, true);
+                log.info("消息重试，当前重试次数：{}，消息ID：{}", retryCount, deliveryTag);
+            } else {
+                // 超过重试次数，进入死信队列
+                channel.basicNack(deliveryTag, false, false);
+                log.warn("消息重试次数超过上限，进入死信队列，消息ID：{}", deliveryTag);
+                // 可以考虑将失败订单信息保存到数据库中，方便后续处理
+                saveFailedOrder(voucherOrder);
+            }
+        } catch (IOException ex) {
+            log.error("消息确认失败，消息ID：{}，异常：{}", deliveryTag, ex.getMessage());
+        }
+    }
+
+    /**
+     * RabbitMQ批量消息监听器，处理秒杀订单
+     * 按优惠券分组，每组一次扣减库存、一次多行插入，整批处理完后一次性批量确认；
+     * 分组处理失败时退回到逐条处理，单条失败的消息仍走重试/死信流程
+     * @param messages 一批消息
+     * @param channel 通道
+     */
+    @RabbitListener(
+            queues = RabbitMQConfig.QUEUE_NAME,
+            containerFactory = RabbitMQConfig.BATCH_LISTENER_CONTAINER_FACTORY,
+            autoStartup = "${seckill.order.batch.enabled:false}")
+    public void listenSeckillOrderBatch(List<Message> messages, Channel channel) {
+        log.info("接收到秒杀订单批量消息，数量：{}", messages.size());
+        // 已成功处理的最大投递标签，最后用multiple=true一次确认
+        long lastAckTag = -1;
+        Map<Long, List<Message>> groups = new LinkedHashMap<>();
+        Map<Message, VoucherOrder> orders = new HashMap<>();
+        for (Message message : messages) {
+            VoucherOrder voucherOrder;
             try {
-                // 判断消息是否已经被重试
-                int retryCount = getRetryCount(message);
-                if (retryCount < MAX_RETRIES) {
-                    // 消息重试
-                    channel.basicNack(deliveryTag, false, true);
-                    log.info("消息重试，当前重试次数：{}，消息ID：{}", retryCount, deliveryTag);
-                } else {
-                    // 超过重试次数，进入死信队列
-                    channel.basicNack(deliveryTag, false, false);
-                    log.warn("消息重试次数超过上限，进入死信队列，消息ID：{}", deliveryTag);
-                    // 可以考虑将失败订单信息保存到数据库中，方便后续处理
-                    saveFailedOrder(voucherOrder);
+                voucherOrder = (VoucherOrder) rabbitTemplate.getMessageConverter().fromMessage(message);
+            } catch (Exception e) {
+                // 无法解析的消息重试也没有意义，直接进入死信队列
+                log.error("秒杀订单消息无法解析，进入死信队列，消息ID：{}", message.getMessageProperties().getDeliveryTag(), e);
+                nackQuietly(channel, message.getMessageProperties().getDeliveryTag());
+                continue;
+            }
+            orders.put(message, voucherOrder);
+            groups.computeIfAbsent(voucherOrder.getVoucherId(), k -> new ArrayList<>()).add(message);
+        }
+
+        for (Map.Entry<Long, List<Message>> group : groups.entrySet()) {
+            List<Message> groupMessages = group.getValue();
+            List<VoucherOrder> groupOrders = groupMessages.stream().map(orders::get).collect(Collectors.toList());
+            try {
+                voucherOrderService.createVoucherOrders(group.getKey(), groupOrders);
+                for (Message message : groupMessages) {
+                    lastAckTag = Math.max(lastAckTag, message.getMessageProperties().getDeliveryTag());
                 }
-            } catch (IOException ex) {
-                log.error("消息确认失败，消息ID：{}，异常：{}", deliveryTag, ex.getMessage());
+            } catch (Exception e) {
+                log.warn("批量处理秒杀订单失败，退回逐条处理，优惠券ID：{}，异常：{}", group.getKey(), e.getMessage());
+                for (Message message : groupMessages) {
+                    VoucherOrder voucherOrder = orders.get(message);
+                    try {
+                        handleVoucherOrder(voucherOrder);
+                        lastAckTag = Math.max(lastAckTag, message.getMessageProperties().getDeliveryTag());
+                    } catch (Exception ex) {
+                        log.error("处理秒杀订单异常，订单ID：{}，异常：{}", voucherOrder.getId(), ex.getMessage());
+                        handleFailedDelivery(voucherOrder, channel, message);
+                    }
+                }
+            }
+        }
+
+        // 失败的消息已经单独nack，剩余的一次性确认
+        if (lastAckTag >= 0) {
+            try {
+                channel.basicAck(lastAckTag, true);
+                log.info("批量订单处理完成，消息已确认至：{}", lastAckTag);
+            } catch (IOException e) {
+                log.error("批量消息确认失败，消息ID：{}，异常：{}", lastAckTag, e.getMessage());
             }
         }
     }
 
+    /**
+     * 拒绝消息且不重新入队
+     */
+    private void nackQuietly(Channel channel, long deliveryTag) {
+        try {
+            channel.basicNack(deliveryTag, false, false);
+        } catch (IOException e) {
+            log.error("消息确认失败，消息ID：{}，异常：{}", deliveryTag, e.getMessage());
+        }
+    }
+
     /**
      * 保存失败的订单信息，更新状态为失败
      * @param voucherOrder 订单信息
      */
     private void saveFailedOrder(VoucherOrder voucherOrder) {
-        // 检查订单是否已经存在
-        VoucherOrder existOrder = getById(voucherOrder.getId());
-        if (existOrder != null) {
-            // 更新订单状态为失败
-            update(new LambdaUpdateWrapper<VoucherOrder>()
-                .eq(VoucherOrder::getId, voucherOrder.getId())
-                .set(VoucherOrder::getProcessStatus, ORDER_STATUS_FAILED));
-            log.warn("订单处理失败，已更新状态：{}", voucherOrder.getId());
-        } else {
-            // 保存新订单，状态为失败
-            voucherOrder.setProcessStatus(ORDER_STATUS_FAILED);
-            save(voucherOrder);
-            log.warn("订单处理失败，保存到失败记录：{}", voucherOrder.getId());
-        }
+        voucherOrderSharding.onUserShard(voucherOrder.getUserId(), () -> {
+            // 检查订单是否已经存在
+            VoucherOrder existOrder = getById(voucherOrder.getId());
+            if (existOrder != null) {
+                // 更新订单状态为失败
+                update(new LambdaUpdateWrapper<VoucherOrder>()
+                    .eq(VoucherOrder::getId, voucherOrder.getId())
+                    .set(VoucherOrder::getProcessStatus, ORDER_STATUS_FAILED));
+                log.warn("订单处理失败，已更新状态：{}", voucherOrder.getId());
+            } else {
+                // 保存新订单，状态为失败（该用户已有订单时忽略）
+                voucherOrder.setProcessStatus(ORDER_STATUS_FAILED);
+                getBaseMapper().insertIgnore(voucherOrder);
+                log.warn("订单处理失败，保存到失败记录：{}", voucherOrder.getId());
+            }
+        });
+        voucherOrder.setProcessStatus(ORDER_STATUS_FAILED);
+        seckillResultNotifier.publishAfterCommit(Collections.singletonList(voucherOrder));
         
         // 更新缓存
         String cacheKey = VOUCHER_ORDER_CACHE_KEY + "user:" + voucherOrder.getUserId() + ":voucher:" + voucherOrder.getVoucherId();
         cacheClient.set(cacheKey, voucherOrder, VOUCHER_ORDER_CACHE_TTL, TimeUnit.SECONDS);
     }
 
-    //处理订单
+    /**
+     * 处理订单
+     * 不再加分布式锁，幂等性由tb_voucher_order的(user_id, voucher_id)唯一索引保证
+     * @param voucherOrder 优惠券订单
+     */
     private void handleVoucherOrder(VoucherOrder voucherOrder) {
-        Long userId = voucherOrder.getUserId();
-        // 创建锁对象（兜底）
-        RLock lock = redissonClient.getLock("lock:order:" + userId);
-        // 获取锁
-        boolean isLock = lock.tryLock();
-        // 判断是否获取锁成功
-        if (!isLock) {
-            // 获取失败,返回错误或者重试
-            log.error("获取锁失败，用户：{}", userId);
-            return;
-        }
+        long begin = System.nanoTime();
         try {
             voucherOrderService.createVoucherOrder(voucherOrder);
         } finally {
-            // 释放锁
-            lock.unlock();
+            // 落库耗时(含失败)作为消费者并发调整的依据
+            seckillConsumerTuner.recordPersist(System.nanoTime() - begin);
         }
     }
 
@@ -220,22 +361,29 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
      */
     @Override
     public Result seckillVoucher(Long voucherId) {
+        // 本地售罄标记命中，直接拒绝，不再生成订单id和执行脚本
+        if (soldOutRegistry.isSoldOut(voucherId)) {
+            return Result.fail("库存不足");
+        }
         // 获取用户
         UserDTO user = UserHolder.getUser();
-        // 获取订单id
-        Long orderId = redisIdWorker.nextId("order");
+        // 获取订单id(启用分表时低位为用户所在的分表)
+        Long orderId = voucherOrderSharding.nextOrderId(user.getId());
         
         // 执行lua脚本，从库存队列中取出库存
-        Long res = stringRedisTemplate.execute(
-                QUEUE_SECKILL_SCRIPT,
-                Arrays.asList(SECKILL_QUEUE_KEY + voucherId, SECKILL_ORDER_KEY + voucherId),
-                user.getId().toString(), orderId.toString(), voucherId.toString());
+        // 在用户所在的库存桶上执行，本桶取完时从其他桶借库存
+        long admittedAt = System.currentTimeMillis();
+        long res = seckillStockRouter.admit(voucherId, user.getId(), orderId, orderTransport.getStreamKey());
         
         // 判断结果是否为0
-        int r = res.intValue();
+        int r = (int) res;
         if (r != 0) {
+            if (r == 1) {
+                // 库存已空，记录本地售罄标记并广播到其他节点(执行脚本之后库存被重新加载时不标记)
+                soldOutRegistry.markSoldOut(voucherId, admittedAt);
+            }
             // 不为0 没有购买资格
-            return Result.fail(r == 1 ? "库存不足" : "禁止重复下单");
+            return Result.fail(seckillFailMessage(r));
         }
 
         // 创建订单对象
@@ -245,24 +393,45 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         voucherOrder.setVoucherId(voucherId);
         voucherOrder.setProcessStatus(ORDER_STATUS_PENDING);
 
-        // 发送消息到RabbitMQ
-        rabbitTemplate.convertAndSend(
-                RabbitMQConfig.EXCHANGE_NAME,
-                RabbitMQConfig.ROUTING_KEY,
-                voucherOrder
-        );
-        log.info("发送秒杀消息到RabbitMQ，订单ID：{}", orderId);
+        // 发送订单(Redis Stream模式下订单已经在脚本中写入)
+        orderTransport.send(voucherOrder);
+        // 记录到本地订单结果表，轮询查询直接命中
+        seckillResultNotifier.markPending(voucherOrder);
 
         // 返回订单id
         return Result.ok(orderId);
     }
 
+    /**
+     * 秒杀脚本结果对应的提示信息
+     */
+    private static String seckillFailMessage(int r) {
+        switch (r) {
+            case 1:
+                return "库存不足";
+            case 3:
+                return "秒杀尚未开始";
+            case 4:
+                return "秒杀已经结束";
+            case 5:
+                return "秒杀未开始/库存未加载";
+            default:
+                return "禁止重复下单";
+        }
+    }
+
+
     @Override
     @NotNull
-    @Transactional(rollbackFor = Exception.class)
     public Result getResult(Long voucherId) {
         // 获取用户ID
         Long userId = UserHolder.getUser().getId();
+
+        // 优先查询本地订单结果表(本节点受理的订单和广播过来的处理结果)
+        VoucherOrder localOrder = seckillResultNotifier.getResult(userId, voucherId);
+        if (localOrder != null) {
+            return SeckillResultNotifier.toResult(localOrder);
+        }
         
         // 使用多级缓存查询
         String cacheKey = VOUCHER_ORDER_CACHE_KEY + "user:" + userId + ":voucher:" + voucherId;
@@ -271,13 +440,13 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
             userId + ":" + voucherId,
             VoucherOrder.class,
             k -> {
-                // 缓存未命中时查询数据库
-                return getBaseMapper().selectOne(
+                // 缓存未命中时查询用户所在分表
+                return voucherOrderSharding.onUserShard(userId, () -> getBaseMapper().selectOne(
                     new LambdaQueryWrapper<VoucherOrder>()
                         .eq(VoucherOrder::getUserId, userId)
                         .eq(VoucherOrder::getVoucherId, voucherId)
                         .last("LIMIT 1")
-                );
+                ));
             },
             VOUCHER_ORDER_CACHE_TTL,
             TimeUnit.SECONDS
@@ -285,8 +454,8 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         
         // 如果订单不存在，检查库存是否已经售罄
         if (order == null) {
-            // 检查库存是否已经售罄
-            if (stockInitializer.isStockEmpty(voucherId)) {
+            // 检查库存是否已经售罄(优先使用本地售罄标记)
+            if (soldOutRegistry.isSoldOut(voucherId) || stockInitializer.isStockEmpty(voucherId)) {
                 return Result.fail("很抱歉，该券已售罄");
             }
             // 订单正在处理中
@@ -294,21 +463,52 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         }
         
         // 根据订单处理状态返回不同结果
-        switch (order.getProcessStatus()) {
-            case ORDER_STATUS_SUCCESS:
-                return Result.ok(order.getId());
-            case ORDER_STATUS_FAILED:
-                return Result.fail("订单处理失败");
-            case ORDER_STATUS_PENDING:
-            default:
-                return Result.ok("订单正在处理中，请稍后查询");
-        }
+        return SeckillResultNotifier.toResult(order);
+    }
+
+    @Override
+    public DeferredResult<Result> waitResult(Long voucherId) {
+        Long userId = UserHolder.getUser().getId();
+        return seckillResultNotifier.await(userId, voucherId);
+    }
+
+    /**
+     * 按订单ID查询，订单ID的低位是分表号，直接定位到分表
+     */
+    @Override
+    public VoucherOrder getOrderById(Long orderId) {
+        return voucherOrderSharding.onShard(voucherOrderSharding.shardOfOrder(orderId), () -> getById(orderId));
+    }
+
+    /**
+     * 管理端查询优惠券的订单：在所有分表上并行查询，合并后按创建时间倒序取前limit条
+     * @param processStatus 订单处理状态，为空时不限
+     */
+    @Override
+    public List<VoucherOrder> queryVoucherOrders(Long voucherId, Integer processStatus, int limit) {
+        List<VoucherOrder> orders = voucherOrderSharding.scatter(shard -> list(new LambdaQueryWrapper<VoucherOrder>()
+                .eq(VoucherOrder::getVoucherId, voucherId)
+                .eq(processStatus != null, VoucherOrder::getProcessStatus, processStatus)
+                .orderByDesc(VoucherOrder::getCreateTime)
+                .last("LIMIT " + limit)));
+        return orders.stream()
+                .sorted(Comparator.comparing(VoucherOrder::getCreateTime, Comparator.nullsLast(Comparator.reverseOrder())))
+                .limit(limit)
+                .collect(Collectors.toList());
     }
 
     @Override
     @Transactional(rollbackFor = Exception.class)
     public void createVoucherOrder(VoucherOrder voucherOrder) {
-        // 检查库存并扣减（乐观锁）
+        // 先插入订单，唯一索引冲突说明该用户已经下过单（幂等性检查）
+        voucherOrder.setProcessStatus(ORDER_STATUS_SUCCESS);
+        int shard = voucherOrderSharding.shardOfUser(voucherOrder.getUserId());
+        if (voucherOrderSharding.onShard(shard, () -> getBaseMapper().insertIgnore(voucherOrder)) == 0) {
+            log.info("订单已处理，跳过重复处理，用户：{}，优惠券：{}", voucherOrder.getUserId(), voucherOrder.getVoucherId());
+            return;
+        }
+
+        // 检查库存并扣减（乐观锁），与插入订单在同一个事务中
         boolean isSuccess = seckillVoucherService.update(
                 new LambdaUpdateWrapper<SeckillVoucher>()
                         .eq(SeckillVoucher::getVoucherId, voucherOrder.getVoucherId())
@@ -321,18 +521,183 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
             stockInitializer.setStockEmpty(voucherOrder.getVoucherId());
             // 更新订单状态为失败
             voucherOrder.setProcessStatus(ORDER_STATUS_FAILED);
-            this.save(voucherOrder);
+            voucherOrderSharding.onShard(shard, () -> update(new LambdaUpdateWrapper<VoucherOrder>()
+                    .eq(VoucherOrder::getId, voucherOrder.getId())
+                    .set(VoucherOrder::getProcessStatus, ORDER_STATUS_FAILED)));
+            seckillResultNotifier.publishAfterCommit(Collections.singletonList(voucherOrder));
             return;
         }
         
-        // 创建订单，更新状态为成功
-        voucherOrder.setProcessStatus(ORDER_STATUS_SUCCESS);
-        this.save(voucherOrder);
-        
         // 更新缓存
         String cacheKey = VOUCHER_ORDER_CACHE_KEY + "user:" + voucherOrder.getUserId() + ":voucher:" + voucherOrder.getVoucherId();
         cacheClient.set(cacheKey, voucherOrder, VOUCHER_ORDER_CACHE_TTL, TimeUnit.SECONDS);
         
+        // 事务提交后推送订单结果，并登记未支付超时取消
+        seckillResultNotifier.publishAfterCommit(Collections.singletonList(voucherOrder));
+        unpaidOrderCanceller.scheduleAfterCommit(Collections.singletonList(voucherOrder));
+        
         log.info("订单创建成功：{}", voucherOrder.getId());
     }
-}
\ No newline at end of file
+
+    /**
+     * 批量创建同一优惠券的订单，一次插入、一次扣减库存
+     * 库存不足以满足整批时，按顺序成功剩余库存数量的订单，其余订单记为失败
+     * @return 本次新建的订单(含处理状态)，之前已经处理过的订单不包含在内
+     */
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public List<VoucherOrder> createVoucherOrders(Long voucherId, List<VoucherOrder> voucherOrders) {
+        // 同一批中同一用户只保留一条(重复投递)
+        Map<Long, VoucherOrder> byUser = new LinkedHashMap<>();
+        for (VoucherOrder voucherOrder : voucherOrders) {
+            byUser.putIfAbsent(voucherOrder.getUserId(), voucherOrder);
+        }
+        // 按用户所在分表，每个分表一次查询、一次多行插入
+        List<VoucherOrder> newOrders = new ArrayList<>(byUser.size());
+        voucherOrderSharding.groupByShard(byUser.values(), VoucherOrder::getUserId).forEach((shard, shardOrders) ->
+                newOrders.addAll(voucherOrderSharding.onShard(shard, () -> insertNewOrders(voucherId, shardOrders))));
+        if (newOrders.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        // 锁定库存行，按剩余库存决定本批中有多少订单成功(库存不足时前面的订单成功，其余失败)
+        Integer stock = seckillVoucherMapper.selectStockForUpdate(voucherId);
+        int take = stock == null ? 0 : Math.min(Math.max(stock, 0), newOrders.size());
+        if (take > 0) {
+            // 一次扣减本批成功的库存
+            seckillVoucherMapper.deductStock(voucherId, take);
+        }
+        if (take < newOrders.size()) {
+            List<VoucherOrder> failedOrders = newOrders.subList(take, newOrders.size());
+            failedOrders.forEach(o -> o.setProcessStatus(ORDER_STATUS_FAILED));
+            voucherOrderSharding.groupByShard(failedOrders, VoucherOrder::getUserId).forEach((shard, shardOrders) ->
+                    voucherOrderSharding.onShard(shard, () -> update(new LambdaUpdateWrapper<VoucherOrder>()
+                            .in(VoucherOrder::getId, shardOrders.stream().map(VoucherOrder::getId).collect(Collectors.toList()))
+                            .set(VoucherOrder::getProcessStatus, ORDER_STATUS_FAILED))));
+            log.warn("库存不足，优惠券ID：{}，成功：{}，失败：{}", voucherId, take, failedOrders.size());
+            // 设置库存为空标记
+            stockInitializer.setStockEmpty(voucherId);
+        }
+
+        // 更新缓存
+        for (VoucherOrder voucherOrder : newOrders) {
+            String cacheKey = VOUCHER_ORDER_CACHE_KEY + "user:" + voucherOrder.getUserId() + ":voucher:" + voucherId;
+            cacheClient.set(cacheKey, voucherOrder, VOUCHER_ORDER_CACHE_TTL, TimeUnit.SECONDS);
+        }
+        // 事务提交后推送订单结果，成功的订单登记未支付超时取消
+        seckillResultNotifier.publishAfterCommit(newOrders);
+        unpaidOrderCanceller.scheduleAfterCommit(newOrders.subList(0, take));
+        log.info("批量创建订单完成，优惠券ID：{}，数量：{}，成功：{}", voucherId, newOrders.size(), take);
+        return newOrders;
+    }
+
+    /**
+     * 在当前分表中插入同一优惠券的一批订单
+     * @return 本次真正插入的订单，已经处理过的用户和并发写入的订单不包含在内
+     */
+    private List<VoucherOrder> insertNewOrders(Long voucherId, List<VoucherOrder> voucherOrders) {
+        Map<Long, VoucherOrder> byUser = new LinkedHashMap<>();
+        for (VoucherOrder voucherOrder : voucherOrders) {
+            byUser.put(voucherOrder.getUserId(), voucherOrder);
+        }
+        // 一次查询过滤掉已经处理过的用户（幂等性检查）
+        List<VoucherOrder> existOrders = list(new LambdaQueryWrapper<VoucherOrder>()
+                .select(VoucherOrder::getUserId)
+                .eq(VoucherOrder::getVoucherId, voucherId)
+                .in(VoucherOrder::getUserId, byUser.keySet()));
+        for (VoucherOrder existOrder : existOrders) {
+            byUser.remove(existOrder.getUserId());
+        }
+        if (byUser.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<VoucherOrder> newOrders = new ArrayList<>(byUser.values());
+        newOrders.forEach(o -> o.setProcessStatus(ORDER_STATUS_SUCCESS));
+        // 一次多行插入，唯一索引冲突的行被忽略
+        int inserted = getBaseMapper().insertIgnoreBatch(newOrders);
+        if (inserted < newOrders.size()) {
+            // 有订单被并发写入，只保留本次真正插入的订单
+            Set<Long> insertedIds = listObjs(new LambdaQueryWrapper<VoucherOrder>()
+                    .select(VoucherOrder::getId)
+                    .in(VoucherOrder::getId, newOrders.stream().map(VoucherOrder::getId).collect(Collectors.toList())),
+                    id -> Long.valueOf(id.toString()))
+                    .stream().collect(Collectors.toSet());
+            newOrders.removeIf(o -> !insertedIds.contains(o.getId()));
+        }
+        return newOrders;
+    }
+
+    /**
+     * 重放死信队列中的订单：按当前库存和已有订单重新校验后，走批量创建订单的流程
+     * 已经处理中或成功的用户跳过；之前记为失败的订单先删除，再和其他订单一起批量插入、扣减库存
+     * @return 本次重新处理的订单(含处理状态)，跳过的订单不包含在内
+     */
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public List<VoucherOrder> replayVoucherOrders(Long voucherId, List<VoucherOrder> voucherOrders) {
+        Map<Long, VoucherOrder> byUser = new LinkedHashMap<>();
+        for (VoucherOrder voucherOrder : voucherOrders) {
+            byUser.putIfAbsent(voucherOrder.getUserId(), voucherOrder);
+        }
+        // 每个分表一次查询这些用户已有的订单
+        Map<Integer, List<Long>> failedIds = new HashMap<>();
+        voucherOrderSharding.groupByShard(byUser.keySet(), userId -> userId).forEach((shard, userIds) -> {
+            List<VoucherOrder> existOrders = voucherOrderSharding.onShard(shard, () -> list(new LambdaQueryWrapper<VoucherOrder>()
+                    .select(VoucherOrder::getId, VoucherOrder::getUserId, VoucherOrder::getProcessStatus)
+                    .eq(VoucherOrder::getVoucherId, voucherId)
+                    .in(VoucherOrder::getUserId, userIds)));
+            for (VoucherOrder existOrder : existOrders) {
+                if (existOrder.getProcessStatus() != null && existOrder.getProcessStatus() == ORDER_STATUS_FAILED) {
+                    failedIds.computeIfAbsent(shard, k -> new ArrayList<>()).add(existOrder.getId());
+                } else {
+                    byUser.remove(existOrder.getUserId());
+                }
+            }
+        });
+        if (byUser.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // 只删除仍然是失败状态的订单，与其他处理并发时以对方为准
+        failedIds.forEach((shard, ids) -> voucherOrderSharding.onShard(shard, () -> remove(new LambdaQueryWrapper<VoucherOrder>()
+                .in(VoucherOrder::getId, ids)
+                .eq(VoucherOrder::getProcessStatus, ORDER_STATUS_FAILED))));
+        List<VoucherOrder> replayOrders = new ArrayList<>(byUser.values());
+        replayOrders.forEach(o -> o.setVoucherId(voucherId));
+        return voucherOrderService.createVoucherOrders(voucherId, replayOrders);
+    }
+
+    /**
+     * 取消未支付的订单并归还数据库库存
+     * 只取消仍然是未支付状态的成功订单，先加行锁再更新，与支付并发时以先提交者为准
+     * @return 本次取消的订单(含用户ID和优惠券ID)
+     */
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public List<VoucherOrder> cancelUnpaidOrders(List<Long> orderIds) {
+        List<VoucherOrder> cancelled = new ArrayList<>();
+        Map<Integer, List<Long>> byShard = orderIds.stream()
+                .collect(Collectors.groupingBy(voucherOrderSharding::shardOfOrder));
+        byShard.forEach((shard, ids) -> voucherOrderSharding.onShard(shard, () -> {
+            List<VoucherOrder> unpaidOrders = list(new LambdaQueryWrapper<VoucherOrder>()
+                    .select(VoucherOrder::getId, VoucherOrder::getUserId, VoucherOrder::getVoucherId)
+                    .in(VoucherOrder::getId, ids)
+                    .eq(VoucherOrder::getStatus, ORDER_PAY_STATUS_UNPAID)
+                    .eq(VoucherOrder::getProcessStatus, ORDER_STATUS_SUCCESS)
+                    .last("FOR UPDATE"));
+            if (unpaidOrders.isEmpty()) {
+                return;
+            }
+            update(new LambdaUpdateWrapper<VoucherOrder>()
+                    .in(VoucherOrder::getId, unpaidOrders.stream().map(VoucherOrder::getId).collect(Collectors.toList()))
+                    .set(VoucherOrder::getStatus, ORDER_PAY_STATUS_CANCELLED));
+            unpaidOrders.forEach(o -> o.setStatus(ORDER_PAY_STATUS_CANCELLED));
+            cancelled.addAll(unpaidOrders);
+        }));
+        // 每个优惠券一次归还库存
+        cancelled.stream()
+                .collect(Collectors.groupingBy(VoucherOrder::getVoucherId, Collectors.counting()))
+                .forEach((voucherId, count) -> seckillVoucherMapper.restoreStock(voucherId, count.intValue()));
+        return cancelled;
+    }
+}
@@ -45,12 +45,15 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         seckillVoucher.setStock(voucher.getStock());
         seckillVoucher.setBeginTime(voucher.getBeginTime());
         seckillVoucher.setEndTime(voucher.getEndTime());
+        seckillVoucher.setStockMode(voucher.getStockMode());
+        seckillVoucher.setStockBuckets(voucher.getStockBuckets());
         seckillVoucherService.save(seckillVoucher);
         
         // 初始化库存(旧方式)
         stringRedisTemplate.opsForValue().set(SECKILL_STOCK_KEY + voucher.getId(), voucher.getStock().toString());
         
-        // 初始化库存队列(新方式)
-        stockInitializer.initStockQueue(voucher.getId(), voucher.getStock());
+        // 初始化库存队列(新方式)，按优惠券指定的存储策略和库存桶数量写入
+        stockInitializer.initStock(voucher.getId(), voucher.getStock(), voucher.getStockMode(),
+                voucher.getBeginTime(), voucher.getEndTime(), voucher.getStockBuckets());
     }
 }
@@ -1,33 +1,48 @@
 package com.hmdp.utils;
 
-import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.BooleanUtil;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
 import com.baomidou.mybatisplus.core.toolkit.StringUtils;
 import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.CacheLoader;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
 import com.hmdp.config.CacheConfig;
 import com.hmdp.config.RabbitMQConfig;
 import com.hmdp.dto.CacheChangeMessage;
 import com.hmdp.entity.Shop;
 import com.hmdp.utils.bloom.BloomFilterFactory;
 import com.hmdp.utils.bloom.BloomFilterStrategy;
+import com.hmdp.utils.codec.CacheCodecs;
 import lombok.extern.slf4j.Slf4j;
 import org.redisson.api.RBloomFilter;
 import org.redisson.api.RedissonClient;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 import static com.hmdp.utils.RedisConstants.*;
 
@@ -44,6 +59,12 @@ public class CacheClient {
     
     // 布隆过滤器工厂
     private final BloomFilterFactory bloomFilterFactory;
+
+    // 缓存重建租约
+    private final CacheLeaseManager cacheLeaseManager;
+
+    // 缓存值编解码器
+    private final CacheCodecs cacheCodecs;
     
     // 布隆过滤器名称常量
     private static final String DEFAULT_BLOOM_FILTER_NAME = "default";
@@ -51,6 +72,12 @@ public class CacheClient {
     
     // 本地缓存 - Caffeine
     private final Cache<String, Object> localCache;
+
+    // 提前刷新模式的本地缓存，条目中带有重新加载的方法
+    private final LoadingCache<String, RefreshEntry> refreshCache;
+
+    // 正在加载的key(按key和值类型区分)，同一key的并发未命中共享一次加载
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> inFlightLoads = new ConcurrentHashMap<>();
     
     // 线程池
     private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
@@ -61,12 +88,16 @@ public class CacheClient {
             RedissonClient redissonClient,
             RabbitTemplate rabbitTemplate,
             CacheConfig cacheConfig,
-            BloomFilterFactory bloomFilterFactory) {
+            BloomFilterFactory bloomFilterFactory,
+            CacheLeaseManager cacheLeaseManager,
+            CacheCodecs cacheCodecs) {
         this.stringRedisTemplate = stringRedisTemplate;
         this.redissonClient = redissonClient;
         this.rabbitTemplate = rabbitTemplate;
         this.cacheConfig = cacheConfig;
         this.bloomFilterFactory = bloomFilterFactory;
+        this.cacheLeaseManager = cacheLeaseManager;
+        this.cacheCodecs = cacheCodecs;
         
         // 初始化本地缓存 Caffeine，使用配置中的参数
         this.localCache = Caffeine.newBuilder()
@@ -75,6 +106,28 @@ public class CacheClient {
                 .expireAfterWrite(cacheConfig.getLocal().getExpireAfterWrite(), TimeUnit.SECONDS)
                 .recordStats() // 记录统计信息
                 .build();
+
+        // 提前刷新模式的本地缓存：写入后超过TTL的一定比例再被访问时在后台重新加载，没有访问的条目按时过期
+        long localTtlMillis = TimeUnit.SECONDS.toMillis(cacheConfig.getLocal().getExpireAfterWrite());
+        this.refreshCache = Caffeine.newBuilder()
+                .maximumSize(cacheConfig.getLocal().getMaximumSize())
+                .expireAfterWrite(localTtlMillis, TimeUnit.MILLISECONDS)
+                .refreshAfterWrite(Math.max(1, (long) (localTtlMillis * cacheConfig.getRefreshAhead().getRefreshRatio())),
+                        TimeUnit.MILLISECONDS)
+                .executor(CACHE_REBUILD_EXECUTOR)
+                .recordStats()
+                .build(new CacheLoader<String, RefreshEntry>() {
+                    @Override
+                    public RefreshEntry load(String key) {
+                        // 首次加载通过 get(key, mappingFunction) 完成
+                        return null;
+                    }
+
+                    @Override
+                    public RefreshEntry reload(String key, RefreshEntry oldValue) {
+                        return RefreshEntry.load(oldValue.loader);
+                    }
+                });
     }
     
     /**
@@ -103,34 +156,234 @@ public class CacheClient {
             return null;
         }
         
-        // 3. 查询Redis缓存
-        String json = stringRedisTemplate.opsForValue().get(key);
-        if (StringUtils.isNotEmpty(json)) {
-            // Redis命中，更新本地缓存
-            R result = JSONUtil.toBean(json, type);
-            localCache.put(key, result);
-            log.debug("Redis缓存命中，key: {}", key);
-            return result;
+        // 本地缓存未命中，同一key的并发请求只由一个线程查询Redis和数据库
+        return singleFlight(key, type, () -> {
+            // 3. 查询Redis缓存
+            R result = decode(key, getBytes(key), type);
+            if (result != null) {
+                // Redis命中，更新本地缓存
+                localCache.put(key, result);
+                log.debug("Redis缓存命中，key: {}", key);
+                return result;
+            }
+
+            // 4. 查询数据库
+            R r = dbFallback.apply(id);
+            if (r != null) {
+                // 数据库中存在，写入Redis和本地缓存
+                this.set(key, r, time, unit);
+                localCache.put(key, r);
+                // 添加到布隆过滤器
+                bloomFilter.add(key);
+                log.debug("从数据库加载并写入多级缓存，key: {}", key);
+            }
+            return r;
+        });
+    }
+
+    /**
+     * 提前刷新模式查询（本地缓存 -> Redis -> 数据库）
+     * 本地缓存写入后超过 local.expire-after-write * refresh-ratio 再被访问时，由Caffeine在后台重新加载并先返回当前值；
+     * 加载时从Redis一并取出剩余TTL，剩余不足 (1 - refresh-ratio) 时由获得重建租约的节点在后台从数据库刷新Redis；
+     * 热点key在过期前就被刷新，读请求不会读到过期数据也不会阻塞，没有访问的条目不刷新、按TTL过期
+     */
+    public <R, ID> R queryWithRefreshAhead(
+            String keyPrefix,
+            ID id,
+            Class<R> type,
+            Function<ID, R> dbFallback,
+            Long time,
+            TimeUnit unit) {
+        if (!cacheConfig.getRefreshAhead().isEnabled()) {
+            return queryWithMultiLevelCache(keyPrefix, id, type, dbFallback, time, unit);
         }
-        
-        // 4. 查询数据库
+        String key = keyPrefix + id;
+
+        // 1. 查询本地缓存，需要刷新时由Caffeine在后台重新加载
+        RefreshEntry entry = refreshCache.getIfPresent(key);
+        if (entry == null) {
+            // 2. 检查布隆过滤器，如果确定不存在，直接返回null
+            if (!getBloomFilterForKey(key).contains(key)) {
+                log.debug("布隆过滤器拦截，key一定不存在: {}", key);
+                return null;
+            }
+            // 3. 本地缓存未命中，同一key的并发请求只加载一次
+            Supplier<Object> loader = () -> loadWithRefreshAhead(key, id, type, dbFallback, time, unit);
+            entry = refreshCache.get(key, k -> RefreshEntry.load(loader));
+        }
+        return entry == null ? null : (R) entry.value;
+    }
+
+    /**
+     * 提前刷新模式加载：读取Redis，快要过期时在后台刷新；Redis未命中时查询数据库
+     */
+    private <R, ID> R loadWithRefreshAhead(
+            String key,
+            ID id,
+            Class<R> type,
+            Function<ID, R> dbFallback,
+            Long time,
+            TimeUnit unit) {
+        // 1. 一次往返读取值和剩余TTL
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.stringCommands().get(rawKey);
+            connection.keyCommands().pTtl(rawKey);
+            return null;
+        }, null);
+        byte[] data = (byte[]) results.get(0);
+        if (data != null && data.length == 0) {
+            // 空值
+            return null;
+        }
+        R cached = decode(key, data, type);
+        if (cached != null) {
+            Long remainMillis = (Long) results.get(1);
+            long aheadMillis = (long) (unit.toMillis(time) * (1 - cacheConfig.getRefreshAhead().getRefreshRatio()));
+            if (remainMillis != null && remainMillis >= 0 && remainMillis < aheadMillis) {
+                refreshRedisAsync(key, id, dbFallback, time, unit);
+            }
+            return cached;
+        }
+
+        // 2. Redis未命中，查询数据库并写入Redis
         R r = dbFallback.apply(id);
         if (r != null) {
-            // 数据库中存在，写入Redis和本地缓存
-            this.set(key, r, time, unit);
-            localCache.put(key, r);
-            // 添加到布隆过滤器
-            bloomFilter.add(key);
-            log.debug("从数据库加载并写入多级缓存，key: {}", key);
+            setBytes(key, cacheCodecs.encode(r), Expiration.from(time, unit));
+            // 租约重建留下的旧值副本比新写入的值旧
+            stringRedisTemplate.delete(key + CACHE_STALE_SUFFIX);
+            getBloomFilterForKey(key).add(key);
+            log.debug("从数据库加载并写入缓存，key: {}", key);
         }
         return r;
     }
 
+    /**
+     * 在后台从数据库刷新Redis缓存，只有获得重建租约的节点执行
+     */
+    private <R, ID> void refreshRedisAsync(String key, ID id, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        String token = cacheLeaseManager.tryAcquire(key);
+        if (token == null) {
+            // 其他节点正在刷新
+            return;
+        }
+        CACHE_REBUILD_EXECUTOR.submit(() -> {
+            try {
+                R r = dbFallback.apply(id);
+                if (r != null) {
+                    setBytes(key, cacheCodecs.encode(r), Expiration.from(time, unit));
+                    stringRedisTemplate.delete(key + CACHE_STALE_SUFFIX);
+                    log.debug("提前刷新Redis缓存，key: {}", key);
+                }
+            } catch (Exception e) {
+                log.error("提前刷新Redis缓存失败，key: {}", key, e);
+            } finally {
+                cacheLeaseManager.releaseAndNotify(key, token);
+            }
+        });
+    }
+
+    /**
+     * 批量从多级缓存中获取数据（本地缓存 -> Redis -> 数据库）
+     * 本地缓存未命中的key用一次MGET查询Redis，Redis也未命中的id交给批量查询一次加载(IN查询)，
+     * 加载结果通过pipeline批量写回Redis；与单个查询一样，布隆过滤器判定不存在和数据库中不存在的id返回null，
+     * Redis中的空值同样视为不存在
+     * @param keyPrefix key前缀
+     * @param ids id列表，可以重复
+     * @param type 缓存值类型
+     * @param batchDbFallback 批量查询数据库，返回id到数据的映射(不存在的id不需要返回)
+     * @return 与ids一一对应的数据，不存在的位置为null
+     */
+    public <R, ID> List<R> queryAllWithMultiLevelCache(
+            String keyPrefix,
+            Collection<ID> ids,
+            Class<R> type,
+            Function<Collection<ID>, Map<ID, R>> batchDbFallback,
+            Long time,
+            TimeUnit unit) {
+        Map<ID, R> found = new LinkedHashMap<>();
+        // 1. 查询本地缓存，未命中且布隆过滤器判定可能存在的id继续查询Redis
+        Map<String, ID> redisMisses = new LinkedHashMap<>();
+        for (ID id : ids) {
+            String key = keyPrefix + id;
+            if (found.containsKey(id) || redisMisses.containsKey(key)) {
+                continue;
+            }
+            R localResult = (R) localCache.getIfPresent(key);
+            if (localResult != null) {
+                found.put(id, localResult);
+            } else if (getBloomFilterForKey(key).contains(key)) {
+                redisMisses.put(key, id);
+            }
+        }
+
+        // 2. 一次MGET查询Redis
+        Map<ID, String> dbMisses = new LinkedHashMap<>();
+        if (!redisMisses.isEmpty()) {
+            List<String> keys = new ArrayList<>(redisMisses.keySet());
+            List<byte[]> values = multiGetBytes(keys);
+            for (int i = 0; i < keys.size(); i++) {
+                String key = keys.get(i);
+                byte[] data = values == null ? null : values.get(i);
+                if (data != null && data.length == 0) {
+                    // 空值
+                    continue;
+                }
+                R result = decode(key, data, type);
+                if (result != null) {
+                    localCache.put(key, result);
+                    found.put(redisMisses.get(key), result);
+                } else {
+                    dbMisses.put(redisMisses.get(key), key);
+                }
+            }
+        }
+
+        // 3. 批量查询数据库，结果批量写回Redis和本地缓存
+        if (!dbMisses.isEmpty()) {
+            Map<ID, R> loaded = batchDbFallback.apply(dbMisses.keySet());
+            Map<String, Object> toCache = new LinkedHashMap<>();
+            for (Map.Entry<ID, String> entry : dbMisses.entrySet()) {
+                R r = loaded == null ? null : loaded.get(entry.getKey());
+                if (r != null) {
+                    found.put(entry.getKey(), r);
+                    toCache.put(entry.getValue(), r);
+                }
+            }
+            if (!toCache.isEmpty()) {
+                multiSet(toCache, time, unit);
+                toCache.keySet().forEach(key -> getBloomFilterForKey(key).add(key));
+            }
+            log.debug("批量加载多级缓存，前缀: {}，数据库查询: {}，命中: {}", keyPrefix, dbMisses.size(), toCache.size());
+        }
+
+        List<R> results = new ArrayList<>(ids.size());
+        for (ID id : ids) {
+            results.add(found.get(id));
+        }
+        return results;
+    }
+
+    /**
+     * 批量写入Redis(pipeline，每个key带过期时间)，同时更新本地缓存
+     */
+    public void multiSet(Map<String, ?> values, Long time, TimeUnit unit) {
+        Map<byte[], byte[]> encoded = new LinkedHashMap<>(values.size() * 2);
+        values.forEach((key, value) -> encoded.put(key.getBytes(StandardCharsets.UTF_8), cacheCodecs.encode(value)));
+        Expiration expiration = Expiration.from(time, unit);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            encoded.forEach((key, value) -> connection.stringCommands()
+                    .set(key, value, expiration, RedisStringCommands.SetOption.upsert()));
+            return null;
+        });
+        localCache.putAll(values);
+    }
+
     /**
      * 将任意对象序列化成json存入redis
      */
     public void set(String key, Object value, Long time, TimeUnit unit) {
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(value), time, unit);
+        setBytes(key, cacheCodecs.encode(value), Expiration.from(time, unit));
         // 同时更新本地缓存
         localCache.put(key, value);
     }
@@ -144,7 +397,7 @@ public class CacheClient {
         redisData.setData(value);
         redisData.setExpireTime(LocalDateTime.now().plusSeconds(unit.toSeconds(time)));
         //存入redis
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(redisData));
+        setBytes(key, cacheCodecs.encodeLogical(redisData), Expiration.persistent());
         //同时更新本地缓存
         localCache.put(key, value);
         
@@ -172,23 +425,25 @@ public class CacheClient {
             // 一定不存在
             return null;
         }
-        // 从redis中查询
-        String json = stringRedisTemplate.opsForValue().get(key);
-        // 判断是否存在
-        if (StringUtils.isNotEmpty(json)) {
-            // 存在直接返回
-            R result = JSONUtil.toBean(json, type);
-            return result;
-        }
+        // 同一key的并发请求只由一个线程查询Redis和数据库
+        return singleFlight(key, type, () -> {
+            // 从redis中查询
+            R result = decode(key, getBytes(key), type);
+            // 判断是否存在
+            if (result != null) {
+                // 存在直接返回
+                return result;
+            }
 
-        // 不存在，查询数据库
-        R r = dbFallback.apply(id);
-        if (r != null) {
-            // 数据库存在，写入redis和布隆过滤器
-            this.set(key, r, time, unit);
-            bloomFilter.add(key);
-        }
-        return r;
+            // 不存在，查询数据库
+            R r = dbFallback.apply(id);
+            if (r != null) {
+                // 数据库存在，写入redis和布隆过滤器
+                this.set(key, r, time, unit);
+                bloomFilter.add(key);
+            }
+            return r;
+        });
     }
 
     /**
@@ -209,18 +464,14 @@ public class CacheClient {
             return localResult;
         }
         
-        //1、从redis中查询缓存
-        String json = stringRedisTemplate.opsForValue().get(key);
+        //1、从redis中查询缓存，一次解码出逻辑过期时间和数据
+        RedisData redisData = getWithLogicalExpire(key, type);
 
-        //2.1、缓存不存在直接返回空
-        if (StringUtils.isEmpty(json)) {
+        //2、缓存不存在直接返回空
+        if (redisData == null) {
             return null;
         }
-
-        //2.2、缓存存在，需要先把json反序列化为对象
-        RedisData redisData = JSONUtil.toBean(json, RedisData.class);
-        JSONObject data = (JSONObject) redisData.getData();
-        R r = BeanUtil.toBean(data, type);
+        R r = (R) redisData.getData();
 
         //3、判断缓存是否过期
         LocalDateTime expireTime = redisData.getExpireTime();
@@ -258,7 +509,8 @@ public class CacheClient {
     }
 
     /**
-     * 互斥锁解决缓存击穿
+     * 互斥重建解决缓存击穿
+     * 重建由租约保证同一时刻只有一个节点访问数据库，其他节点返回旧值或等待重建完成通知
      */
     public <R, ID> R queryWithMutex(
             String keyPrefix,
@@ -276,52 +528,208 @@ public class CacheClient {
         }
         
         // 2. 查询Redis
-        String json = stringRedisTemplate.opsForValue().get(key);
-        if (StringUtils.isNotBlank(json)) {
-            R r = JSONUtil.toBean(json, type);
-            // 更新本地缓存
-            localCache.put(key, r);
-            return r;
-        }
-        if (json != null) {
-            // 返回一个错误信息
+        byte[] data = getBytes(key);
+        if (data != null && data.length == 0) {
+            // 命中空值，返回一个错误信息
             return null;
         }
+        R cached = decode(key, data, type);
+        if (cached != null) {
+            // 更新本地缓存
+            localCache.put(key, cached);
+            return cached;
+        }
 
-        // 3. 实现缓存重建
-        // 3.1 获取互斥锁
-        String lockKey = LOCK_SHOP_KEY + id;
-        R r = null;
+        // 3. 实现缓存重建，同一key的并发请求只由一个线程竞争租约，其他线程等待它的结果
+        return singleFlight(key, type, () -> rebuildWithLease(key, id, type, dbFallback, time, unit));
+    }
+
+    /**
+     * 持有租约重建缓存
+     * 租约被其他节点持有时，有旧值直接返回旧值；没有旧值时登记等待，收到重建完成通知后立即重新读取Redis，
+     * 等待时间等于实际的重建耗时；租约到期仍未完成(持有者宕机)时重新竞争租约
+     */
+    private <R, ID> R rebuildWithLease(
+            String key,
+            ID id,
+            Class<R> type,
+            Function<ID, R> dbFallback,
+            Long time,
+            TimeUnit unit) {
+        // 3.1 获取租约
+        String token = cacheLeaseManager.tryAcquire(key);
+        if (token == null) {
+            // 3.2 其他节点正在重建，优先返回旧值
+            R stale = decode(key, getBytes(key + CACHE_STALE_SUFFIX), type);
+            if (stale != null) {
+                log.debug("缓存重建中，返回旧值，key: {}", key);
+                return stale;
+            }
+            try {
+                while (token == null) {
+                    // 3.3 先登记等待再读取Redis，读取之后发出的通知不会丢失
+                    CompletableFuture<Void> signal = cacheLeaseManager.watch(key);
+                    byte[] data = getBytes(key);
+                    if (data != null && data.length == 0) {
+                        return null;
+                    }
+                    R r = decode(key, data, type);
+                    if (r != null) {
+                        localCache.put(key, r);
+                        return r;
+                    }
+                    // 重建失败或租约已经过期时由本节点接管
+                    token = cacheLeaseManager.tryAcquire(key);
+                    if (token == null) {
+                        cacheLeaseManager.await(key, signal, cacheLeaseManager.getLeaseMillis());
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
         try {
-            boolean isLock = tryLock(lockKey);
-            // 3.2 判断获取锁是否成功
-            if (!isLock) {
-                // 3.3 失败，则休眠重试
-                Thread.sleep(50);
-                return queryWithMutex(keyPrefix, id, type, dbFallback, time, unit);
+            // 3.4 获得租约前其他节点可能刚好重建完成
+            byte[] data = getBytes(key);
+            if (data != null && data.length == 0) {
+                return null;
             }
-
-            // 3.4 成功，根据id查询数据库
-            r = dbFallback.apply(id);
-            // 3.5 不存在，返回错误
+            R cached = decode(key, data, type);
+            if (cached != null) {
+                localCache.put(key, cached);
+                return cached;
+            }
+            // 3.5 根据id查询数据库
+            R r = dbFallback.apply(id);
+            // 3.6 不存在，返回错误
             if (r == null) {
                 // 将空值写入redis
                 stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
                 // 返回错误信息
                 return null;
             }
-            // 3.6 存在，写入redis
+            // 3.7 存在，写入redis，并保留一份过期更晚的旧值供下次重建期间返回
             this.set(key, r, time, unit);
+            setBytes(key + CACHE_STALE_SUFFIX, cacheCodecs.encode(r), Expiration.seconds(
+                    unit.toSeconds(time) + cacheConfig.getLease().getStaleSeconds()));
             // 将key添加到布隆过滤器
             addToBloomFilter(key);
+            return r;
+        } finally {
+            // 释放租约并通知等待的节点
+            cacheLeaseManager.releaseAndNotify(key, token);
+        }
+    }
+
+    /**
+     * 合并同一key的并发加载
+     * 第一个未命中的线程执行加载，其他线程等待同一个结果(包括空值和异常)，不再各自访问Redis和数据库；
+     * 加载结束后立即移除，之后的未命中重新加载
+     * 不同的查询方法可能用不同的值类型读取同一个key，按key和值类型区分，只合并结果类型相同的加载
+     * @param key 缓存key
+     * @param type 加载结果的类型
+     * @param loader 加载逻辑
+     * @return 加载结果
+     */
+    @SuppressWarnings("unchecked")
+    private <R> R singleFlight(String key, Class<R> type, Supplier<R> loader) {
+        if (!cacheConfig.getSingleFlight().isEnabled()) {
+            return loader.get();
+        }
+        String flightKey = key + "|" + type.getName();
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> inFlight = inFlightLoads.putIfAbsent(flightKey, future);
+        if (inFlight != null) {
+            // 其他线程正在加载，等待它的结果
+            log.debug("等待正在进行的缓存加载，key: {}", key);
+            return (R) await(key, inFlight, loader);
+        }
+        try {
+            R r = loader.get();
+            future.complete(r);
+            return r;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightLoads.remove(flightKey, future);
+        }
+    }
+
+    private Object await(String key, CompletableFuture<Object> inFlight, Supplier<?> loader) {
+        try {
+            return inFlight.get(cacheConfig.getSingleFlight().getWaitTimeoutMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.warn("等待缓存加载超时，自行加载，key: {}", key);
+            return loader.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw new RuntimeException(e);
-        } finally {
-            // 释放锁
-            unLock(lockKey);
         }
-        // 返回
-        return r;
+    }
+    
+    /**
+     * 查询逻辑过期的缓存
+     * @param key 缓存key
+     * @param type 缓存值类型
+     * @return data 为 type 类型的 RedisData，不存在或无法解码时返回null
+     */
+    public <R> RedisData getWithLogicalExpire(String key, Class<R> type) {
+        byte[] data = getBytes(key);
+        if (data == null || data.length == 0) {
+            return null;
+        }
+        try {
+            return cacheCodecs.codecFor(type).decodeLogical(data);
+        } catch (RuntimeException e) {
+            log.warn("逻辑过期缓存解码失败，按未命中处理，key: {}", key, e);
+            return null;
+        }
+    }
+
+    /**
+     * 解码Redis中的缓存值
+     * @return 缓存值，不存在、空值或无法解码(如编解码方式切换前写入的旧格式)时返回null，按未命中处理
+     */
+    private <R> R decode(String key, byte[] data, Class<R> type) {
+        if (data == null || data.length == 0) {
+            return null;
+        }
+        try {
+            return cacheCodecs.codecFor(type).decode(data);
+        } catch (RuntimeException e) {
+            log.warn("缓存值解码失败，按未命中处理，key: {}", key, e);
+            return null;
+        }
+    }
+
+    private byte[] getBytes(String key) {
+        return stringRedisTemplate.execute((RedisCallback<byte[]>) connection ->
+                connection.stringCommands().get(key.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private List<byte[]> multiGetBytes(List<String> keys) {
+        byte[][] rawKeys = new byte[keys.size()][];
+        for (int i = 0; i < keys.size(); i++) {
+            rawKeys[i] = keys.get(i).getBytes(StandardCharsets.UTF_8);
+        }
+        return stringRedisTemplate.execute((RedisCallback<List<byte[]>>) connection ->
+                connection.stringCommands().mGet(rawKeys));
+    }
+
+    private void setBytes(String key, byte[] value, Expiration expiration) {
+        stringRedisTemplate.execute((RedisCallback<Boolean>) connection -> connection.stringCommands()
+                .set(key.getBytes(StandardCharsets.UTF_8), value, expiration, RedisStringCommands.SetOption.upsert()));
     }
     
     /**
@@ -329,13 +737,28 @@ public class CacheClient {
      */
     public void deleteCache(String key) {
         // 删除redis缓存
-        stringRedisTemplate.delete(key);
+        deleteRedisCache(key);
         // 删除本地缓存
         localCache.invalidate(key);
+        refreshCache.invalidate(key);
         // 发布缓存变更消息
         publishCacheChangeEvent(key, "delete");
     }
     
+    /**
+     * 删除Redis缓存，连同重建期间返回的旧值副本一起删除，避免数据变更后仍返回变更前的旧值
+     */
+    public void deleteRedisCache(String key) {
+        stringRedisTemplate.delete(Arrays.asList(key, key + CACHE_STALE_SUFFIX));
+    }
+
+    /**
+     * 只删除重建期间返回的旧值副本，缓存本身由调用方覆盖写入
+     */
+    public void deleteStaleCopy(String key) {
+        stringRedisTemplate.delete(key + CACHE_STALE_SUFFIX);
+    }
+
     /**
      * 发布缓存变更消息
      */
@@ -373,6 +796,7 @@ public class CacheClient {
         if ("delete".equals(operation)) {
             // 删除本地缓存
             localCache.invalidate(key);
+            refreshCache.invalidate(key);
             log.debug("删除本地缓存：{}", key);
         } else if ("update".equals(operation)) {
             // 更新本地缓存，需要从Redis获取最新值
@@ -380,6 +804,7 @@ public class CacheClient {
             if (StringUtils.isNotBlank(json)) {
                 // 这里需要知道具体类型，简化处理，直接失效
                 localCache.invalidate(key);
+                refreshCache.invalidate(key);
                 log.debug("失效本地缓存，等待下次查询更新：{}", key);
             }
         }
@@ -430,4 +855,25 @@ public class CacheClient {
     public void setWithLogicalExpire(String key, Object data, Duration ofSeconds) {
         setWithLogicalExpire(key, data, ofSeconds.getSeconds(), TimeUnit.SECONDS);
     }
-}
\ No newline at end of file
+
+    /**
+     * 提前刷新模式的本地缓存条目
+     */
+    private static final class RefreshEntry {
+        private final Object value;
+        private final Supplier<Object> loader;
+
+        private RefreshEntry(Object value, Supplier<Object> loader) {
+            this.value = value;
+            this.loader = loader;
+        }
+
+        /**
+         * 加载条目，数据不存在时返回null(本地缓存中删除该条目)
+         */
+        static RefreshEntry load(Supplier<Object> loader) {
+            Object value = loader.get();
+            return value == null ? null : new RefreshEntry(value, loader);
+        }
+    }
+}
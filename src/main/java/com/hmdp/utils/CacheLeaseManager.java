@@ -0,0 +1,139 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import com.hmdp.config.CacheConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.hmdp.utils.RedisConstants.CACHE_LEASE_CHANNEL;
+import static com.hmdp.utils.RedisConstants.CACHE_LEASE_KEY;
+
+/**
+ * 缓存重建租约
+ * 缓存未命中时第一个节点获得租约(带令牌的SET NX PX)并重建缓存，写入后通过Redis发布订阅通知重建完成；
+ * 其他节点不再固定间隔休眠轮询，而是登记等待并在收到通知后立即重新读取，等待时间等于实际的重建耗时；
+ * 租约到期仍未收到通知(持有者宕机)时等待方重新竞争租约
+ */
+@Slf4j
+@Component
+public class CacheLeaseManager implements DisposableBean {
+
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT;
+
+    static {
+        RELEASE_SCRIPT = new DefaultRedisScript<>();
+        RELEASE_SCRIPT.setLocation(new ClassPathResource("cache_lease_release.lua"));
+        RELEASE_SCRIPT.setResultType(Long.class);
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final CacheConfig.Lease config;
+    private final RedisMessageListenerContainer listenerContainer;
+
+    /**
+     * 本节点正在等待重建完成的key
+     */
+    private final ConcurrentHashMap<String, CompletableFuture<Void>> waiters = new ConcurrentHashMap<>();
+
+    public CacheLeaseManager(StringRedisTemplate stringRedisTemplate, RedisConnectionFactory connectionFactory,
+                             CacheConfig cacheConfig) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.config = cacheConfig.getLease();
+        this.listenerContainer = new RedisMessageListenerContainer();
+        this.listenerContainer.setConnectionFactory(connectionFactory);
+        this.listenerContainer.addMessageListener((message, pattern) ->
+                wakeUp(new String(message.getBody(), StandardCharsets.UTF_8)), new ChannelTopic(CACHE_LEASE_CHANNEL));
+        this.listenerContainer.afterPropertiesSet();
+        this.listenerContainer.start();
+    }
+
+    /**
+     * 租约时长（毫秒）
+     */
+    public long getLeaseMillis() {
+        return config.getLeaseMillis();
+    }
+
+    /**
+     * 尝试获取缓存key的重建租约
+     * @param key 缓存key
+     * @return 租约令牌，租约被其他节点持有时返回null
+     */
+    public String tryAcquire(String key) {
+        String token = UUID.fastUUID().toString(true);
+        Boolean acquired = stringRedisTemplate.opsForValue()
+                .setIfAbsent(CACHE_LEASE_KEY + key, token, config.getLeaseMillis(), TimeUnit.MILLISECONDS);
+        return Boolean.TRUE.equals(acquired) ? token : null;
+    }
+
+    /**
+     * 释放租约并通知所有节点重建完成(重建失败时也通知，等待方重新竞争租约)
+     * @param key 缓存key
+     * @param token 获取租约时的令牌
+     */
+    public void releaseAndNotify(String key, String token) {
+        try {
+            stringRedisTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(CACHE_LEASE_KEY + key), token);
+        } finally {
+            stringRedisTemplate.convertAndSend(CACHE_LEASE_CHANNEL, key);
+        }
+    }
+
+    /**
+     * 登记等待key的重建完成通知
+     * 需要在重新读取缓存之前登记，避免读取和等待之间的通知丢失
+     * @param key 缓存key
+     * @return 收到通知时完成
+     */
+    public CompletableFuture<Void> watch(String key) {
+        return waiters.computeIfAbsent(key, k -> new CompletableFuture<>());
+    }
+
+    /**
+     * 等待重建完成通知
+     * @param key 缓存key
+     * @param signal watch返回的等待对象
+     * @param timeoutMillis 最长等待时间（毫秒）
+     * @return 是否收到通知，超时返回false
+     */
+    public boolean await(String key, CompletableFuture<Void> signal, long timeoutMillis) throws InterruptedException {
+        try {
+            signal.get(Math.max(timeoutMillis, 1), TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            waiters.remove(key, signal);
+            return false;
+        } catch (ExecutionException e) {
+            return true;
+        }
+    }
+
+    private void wakeUp(String key) {
+        CompletableFuture<Void> signal = waiters.remove(key);
+        if (signal != null) {
+            log.debug("缓存重建完成，唤醒等待方，key: {}", key);
+            signal.complete(null);
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        listenerContainer.stop();
+        listenerContainer.destroy();
+    }
+}
@@ -18,6 +18,9 @@ public class RedisConstants {
     public static final String SECKILL_QUEUE_KEY = "seckill:queue:";
     public static final String SECKILL_ORDER_KEY = "seckill:order:";
     public static final String SECKILL_EMPTY_KEY = "seckill:empty:";
+    public static final String SECKILL_ROOM_KEY = "seckill:room:";
+    public static final String SECKILL_IDEMPOTENCY_KEY = "seckill:idem:";
+    public static final String SECKILL_UNPAID_KEY = "seckill:unpaid";
     
     public static final String BLOG_LIKED_KEY = "blog:liked:";
     public static final String FEED_KEY = "feed:";
@@ -34,6 +37,11 @@ public class RedisConstants {
     // 缓存变更通知相关常量
     public static final String CACHE_CHANGE_TOPIC = "cache:change";
     public static final String CACHE_DELETE_KEY = "cache:delete:";
+
+    // 缓存重建租约相关常量
+    public static final String CACHE_LEASE_KEY = "lease:cache:";
+    public static final String CACHE_LEASE_CHANNEL = "cache:lease:done";
+    public static final String CACHE_STALE_SUFFIX = ":stale";
     
     // JWT相关常量
     public static final String JWT_BLACKLIST_PREFIX = "jwt:blacklist:";
@@ -43,6 +51,10 @@ public class RedisConstants {
     public static final int ORDER_STATUS_PENDING = 0; // 订单处理中
     public static final int ORDER_STATUS_SUCCESS = 1; // 订单成功
     public static final int ORDER_STATUS_FAILED = 2; // 订单失败
+
+    // 订单支付状态常量
+    public static final int ORDER_PAY_STATUS_UNPAID = 1; // 未支付
+    public static final int ORDER_PAY_STATUS_CANCELLED = 4; // 已取消
     
     // 业务限流常量
     public static final String LIMIT_RATE_KEY = "limit:rate:";
@@ -1,5 +1,6 @@
 package com.hmdp.utils;
 
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
@@ -7,6 +8,7 @@ import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 
+@Slf4j
 @Component
 public class RedisIdWorker {
     /**
@@ -17,6 +19,10 @@ public class RedisIdWorker {
      * 序列号的位数
      */
     private static final int COUNT_BITS = 32;
+    /**
+     * 分片号的位数(占用序列号的低位)
+     */
+    public static final int SHARD_BITS = 6;
 
     private StringRedisTemplate stringRedisTemplate;
 
@@ -39,4 +45,28 @@ public class RedisIdWorker {
         // 3.拼接并返回
         return timestamp << COUNT_BITS | count;
     }
+
+    /**
+     * 生成带分片号的ID：序列号的低SHARD_BITS位存放分片号，按ID即可定位分片
+     * 序列号剩余26位，同一业务每天最多约6700万个ID，超过时抛出异常(截断会产生重复ID，重复的订单会被忽略)
+     * @param keyPrefix 业务前缀
+     * @param shard 分片号(小于 2^SHARD_BITS)
+     */
+    public long nextId(String keyPrefix, int shard) {
+        long id = nextId(keyPrefix);
+        long timestamp = id >>> COUNT_BITS;
+        long count = id & ((1L << COUNT_BITS) - 1);
+        if (count >= 1L << (COUNT_BITS - SHARD_BITS)) {
+            log.error("当天的ID序列号已用完，业务前缀: {}，序列号: {}，上限: {}", keyPrefix, count, 1L << (COUNT_BITS - SHARD_BITS));
+            throw new IllegalStateException("ID序列号溢出，业务前缀: " + keyPrefix);
+        }
+        return timestamp << COUNT_BITS | count << SHARD_BITS | shard;
+    }
+
+    /**
+     * 从带分片号的ID中取出分片号
+     */
+    public static int shardOf(long id) {
+        return (int) (id & ((1L << SHARD_BITS) - 1));
+    }
 }
\ No newline at end of file
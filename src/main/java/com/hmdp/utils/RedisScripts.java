@@ -0,0 +1,30 @@
+package com.hmdp.utils;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.util.List;
+
+/**
+ * Lua脚本工具类
+ */
+public final class RedisScripts {
+
+    private RedisScripts() {
+    }
+
+    /**
+     * 创建返回列表的Lua脚本
+     * 脚本结果只能按 List.class 反序列化，元素类型由调用方按脚本的返回值指定(整数为Long，字符串为String)
+     * @param location classpath下的脚本路径
+     * @param <T> 列表元素类型
+     * @return Lua脚本
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static <T> DefaultRedisScript<List<T>> listScript(String location) {
+        DefaultRedisScript<List<T>> script = new DefaultRedisScript<>();
+        script.setLocation(new ClassPathResource(location));
+        script.setResultType((Class<List<T>>) (Class) List.class);
+        return script;
+    }
+}
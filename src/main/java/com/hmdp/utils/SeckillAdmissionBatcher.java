@@ -0,0 +1,255 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.SeckillConfig;
+import com.hmdp.utils.stock.StockLayout;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 秒杀请求微批提交器
+ * 同一优惠券、同一库存桶的并发秒杀请求先写入该库存桶的环形缓冲区，
+ * 在一个很短的时间窗口内攒成一批，用一次批量Lua脚本调用完成资格判断，
+ * 脚本按请求顺序返回每个用户的结果，再分别唤醒等待的请求线程
+ *
+ * 请求线程最多等待 wait-timeout-millis：超时时如果提交任务还没有取走该请求，由请求线程认领后单独执行脚本，
+ * 提交任务取数据时跳过已被认领的请求，同一个请求不会被执行两次
+ */
+@Slf4j
+@Component
+public class SeckillAdmissionBatcher implements DisposableBean {
+
+    /**
+     * 批量秒杀脚本，返回每个请求的结果
+     */
+    private static final DefaultRedisScript<List<Long>> BATCH_SECKILL_SCRIPT =
+            RedisScripts.listScript("batch_queue_seckill.lua");
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final SeckillConfig.Admission config;
+    private final ScheduledExecutorService flushExecutor;
+
+    /**
+     * 每个优惠券的每个库存桶一个通道，key为 优惠券ID:桶号
+     */
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+
+    public SeckillAdmissionBatcher(StringRedisTemplate stringRedisTemplate, SeckillConfig seckillConfig) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.config = seckillConfig.getAdmission();
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.flushExecutor = Executors.newScheduledThreadPool(config.getFlushThreads(), r -> {
+            Thread thread = new Thread(r, "seckill-admission-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 是否启用微批提交
+     */
+    public boolean isEnabled() {
+        return config.isBatchEnabled();
+    }
+
+    /**
+     * 在用户所在的库存桶上提交一个秒杀请求并等待批量脚本的结果
+     * @param layout 优惠券的库存布局
+     * @param userId 用户ID
+     * @param orderId 订单ID
+     * @param streamKey 订单Stream key，不使用Redis Stream传输订单时为null
+     * @return 脚本结果(0：成功；1：本桶库存不足；2：重复下单；3：尚未开始；4：已经结束)，
+     * 缓冲区已满、无法安排提交任务或等待超时时返回null，由调用方单独执行脚本
+     */
+    public Long admit(StockLayout layout, Long userId, Long orderId, String streamKey) {
+        Long voucherId = layout.getVoucherId();
+        int bucket = layout.homeBucket(userId);
+        Lane lane = lanes.computeIfAbsent(voucherId + ":" + bucket,
+                k -> new Lane(voucherId, layout.stockKey(bucket), streamKey));
+        AdmissionRequest request = new AdmissionRequest(layout, userId, orderId);
+        if (!lane.ring.offer(request)) {
+            return null;
+        }
+        if (!lane.scheduleFlush() && request.claim()) {
+            return null;
+        }
+        try {
+            return request.future.get(config.getWaitTimeoutMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            if (request.claim()) {
+                log.warn("等待批量秒杀脚本超时，单独执行，优惠券ID: {}，用户ID: {}", voucherId, userId);
+                return null;
+            }
+            // 提交任务已经取走该请求，脚本正在执行，等待结果(受Redis命令超时限制)
+            return request.future.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (request.claim()) {
+                return null;
+            }
+            return request.future.join();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * 释放优惠券的提交通道(秒杀结束后调用)，已经排队的请求仍会被执行
+     * @param voucherId 优惠券ID
+     */
+    public void release(Long voucherId) {
+        lanes.entrySet().removeIf(entry -> {
+            Lane lane = entry.getValue();
+            if (!lane.voucherId.equals(voucherId)) {
+                return false;
+            }
+            if (!lane.ring.isEmpty()) {
+                lane.scheduleFlush();
+            }
+            return true;
+        });
+    }
+
+    @Override
+    public void destroy() {
+        flushExecutor.shutdown();
+    }
+
+    /**
+     * 单个库存桶的提交通道
+     */
+    private class Lane {
+        private final Long voucherId;
+        private final String stockKey;
+        private final String streamKey;
+        private final ArrayBlockingQueue<AdmissionRequest> ring;
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        Lane(Long voucherId, String stockKey, String streamKey) {
+            this.voucherId = voucherId;
+            this.stockKey = stockKey;
+            this.streamKey = streamKey;
+            this.ring = new ArrayBlockingQueue<>(config.getRingSize());
+        }
+
+        /**
+         * 当前窗口还没有安排提交任务时，安排一次
+         * @return 是否已经安排了提交任务，线程池拒绝时返回false
+         */
+        boolean scheduleFlush() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    flushExecutor.schedule(this::flush, config.getWindowMicros(), TimeUnit.MICROSECONDS);
+                } catch (RejectedExecutionException e) {
+                    // 清除标记，避免通道后续的请求都不再安排提交任务
+                    scheduled.set(false);
+                    log.error("安排批量秒杀提交任务失败，优惠券ID: {}", voucherId, e);
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void flush() {
+            // 先清除标记再取数据，取数据之后到达的请求会安排新的提交任务
+            scheduled.set(false);
+            List<AdmissionRequest> batch = new ArrayList<>(config.getMaxBatchSize());
+            ring.drainTo(batch, config.getMaxBatchSize());
+            // 跳过等待超时、已由请求线程单独执行的请求
+            batch.removeIf(request -> !request.claim());
+            if (!ring.isEmpty()) {
+                // 超过单批上限的请求放到下一批
+                scheduleFlush();
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+
+            // KEYS：库存桶key、本批用到的用户订单记录分片key、可选的订单Stream key
+            StockLayout layout = batch.get(0).layout;
+            Map<String, Integer> shardIndexes = new LinkedHashMap<>();
+            List<String> keys = new ArrayList<>();
+            keys.add(stockKey);
+            List<String> args = new ArrayList<>(batch.size() * 4 + 5);
+            args.add(voucherId.toString());
+            args.add(String.valueOf(layout.getBeginMillis()));
+            args.add(String.valueOf(layout.getEndMillis()));
+            args.add(String.valueOf(layout.getExpireAtMillis()));
+            args.add(streamKey == null ? "0" : "1");
+            for (AdmissionRequest request : batch) {
+                Integer index = shardIndexes.computeIfAbsent(request.shardKey, key -> {
+                    keys.add(key);
+                    // Lua下标从1开始
+                    return keys.size();
+                });
+                args.add(request.userId.toString());
+                args.add(request.orderId.toString());
+                args.add(index.toString());
+                args.add(String.valueOf(request.offset));
+            }
+            if (streamKey != null) {
+                keys.add(streamKey);
+            }
+            try {
+                List<Long> results = stringRedisTemplate.execute(
+                        BATCH_SECKILL_SCRIPT,
+                        keys,
+                        args.toArray());
+                for (int i = 0; i < batch.size(); i++) {
+                    batch.get(i).future.complete(results.get(i));
+                }
+                log.debug("批量秒杀脚本执行完成，优惠券ID: {}，请求数量: {}", voucherId, batch.size());
+            } catch (Exception e) {
+                log.error("批量秒杀脚本执行失败，优惠券ID: {}，请求数量: {}", voucherId, batch.size(), e);
+                batch.forEach(request -> request.future.completeExceptionally(e));
+            }
+        }
+    }
+
+    /**
+     * 等待提交的秒杀请求
+     */
+    private static class AdmissionRequest {
+        private final StockLayout layout;
+        private final Long userId;
+        private final Long orderId;
+        private final String shardKey;
+        private final long offset;
+        private final CompletableFuture<Long> future = new CompletableFuture<>();
+        private final AtomicBoolean claimed = new AtomicBoolean(false);
+
+        AdmissionRequest(StockLayout layout, Long userId, Long orderId) {
+            this.layout = layout;
+            this.userId = userId;
+            this.orderId = orderId;
+            this.shardKey = layout.orderShardKey(userId);
+            this.offset = layout.orderOffset(userId);
+        }
+
+        /**
+         * 认领请求，提交任务和等待超时的请求线程只有一方能认领成功
+         */
+        boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+    }
+}
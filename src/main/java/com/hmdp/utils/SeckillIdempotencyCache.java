@@ -0,0 +1,116 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmdp.config.SeckillConfig;
+import com.hmdp.dto.Result;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_IDEMPOTENCY_KEY;
+
+/**
+ * 秒杀请求幂等缓存
+ * 客户端超时重试时携带与第一次请求相同的幂等键，按 本地缓存 -> Redis 查找第一次请求的结果并直接返回，
+ * 不再生成订单ID、不再执行秒杀脚本；第一次请求用 SETNX 占住幂等键，并发的重试请求不会重复执行
+ */
+@Slf4j
+@Component
+public class SeckillIdempotencyCache {
+
+    /**
+     * 幂等键请求头
+     */
+    public static final String IDEMPOTENCY_HEADER = "Idempotency-Key";
+
+    /**
+     * 第一次请求还在处理中时Redis中保存的占位值
+     */
+    private static final String PROCESSING = "processing";
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final SeckillConfig.Idempotency config;
+
+    /**
+     * 本地结果缓存，key与Redis key相同
+     */
+    private final Cache<String, Result> localResults;
+
+    public SeckillIdempotencyCache(StringRedisTemplate stringRedisTemplate, SeckillConfig seckillConfig) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.config = seckillConfig.getIdempotency();
+        this.localResults = Caffeine.newBuilder()
+                .maximumSize(config.getLocalMaxSize())
+                .expireAfterWrite(config.getTtlSeconds(), TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * 按幂等键执行秒杀请求
+     * @param userId 用户ID(幂等键按用户和优惠券隔离)
+     * @param voucherId 优惠券ID
+     * @param idempotencyKey 幂等键，为空或未启用时直接执行
+     * @param action 秒杀请求
+     * @return 第一次请求的结果
+     */
+    public Result execute(Long userId, Long voucherId, String idempotencyKey, Supplier<Result> action) {
+        if (!config.isEnabled() || StrUtil.isBlank(idempotencyKey)) {
+            return action.get();
+        }
+        if (idempotencyKey.length() > config.getMaxKeyLength()) {
+            return Result.fail("幂等键无效");
+        }
+        String key = SECKILL_IDEMPOTENCY_KEY + userId + ":" + voucherId + ":" + idempotencyKey;
+
+        // 1. 本地缓存(重试大多落在同一个节点)
+        Result cached = localResults.getIfPresent(key);
+        if (cached != null) {
+            log.debug("幂等键本地缓存命中，key: {}", key);
+            return cached;
+        }
+
+        // 2. 占住幂等键，占用失败说明是重试请求
+        Boolean first = stringRedisTemplate.opsForValue()
+                .setIfAbsent(key, PROCESSING, config.getTtlSeconds(), TimeUnit.SECONDS);
+        if (!Boolean.TRUE.equals(first)) {
+            return replay(key);
+        }
+
+        // 3. 第一次请求，执行后保存结果
+        Result result;
+        try {
+            result = action.get();
+        } catch (RuntimeException e) {
+            // 执行异常时释放幂等键，允许客户端重试
+            stringRedisTemplate.delete(key);
+            throw e;
+        }
+        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(result), config.getTtlSeconds(), TimeUnit.SECONDS);
+        localResults.put(key, result);
+        return result;
+    }
+
+    /**
+     * 返回第一次请求的结果
+     */
+    private Result replay(String key) {
+        String value = stringRedisTemplate.opsForValue().get(key);
+        if (value == null) {
+            // 第一次请求刚好过期或异常释放
+            return Result.fail("请求已失效，请重新提交");
+        }
+        if (PROCESSING.equals(value)) {
+            return Result.fail("请求正在处理中，请勿重复提交");
+        }
+        Result result = JSONUtil.toBean(value, Result.class);
+        localResults.put(key, result);
+        log.debug("幂等键命中，返回第一次请求的结果，key: {}", key);
+        return result;
+    }
+}
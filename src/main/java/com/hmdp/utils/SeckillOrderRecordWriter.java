@@ -0,0 +1,105 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.SeckillConfig;
+import com.hmdp.utils.stock.StockLayout;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * 秒杀用户订单记录批量写入工具
+ * 用户订单记录是按库存桶和用户ID分片的位图(与秒杀脚本的分片方式一致，见 StockLayout)，
+ * 批量重建时先在内存中按分片拼出位图，每个分片只需要一次SET加一次BITOP OR合并，
+ * 不再为每个用户发送一条SETBIT；合并而不是覆盖，重建期间秒杀脚本写入的记录不会丢失
+ */
+@Slf4j
+@Component
+public class SeckillOrderRecordWriter {
+
+    /**
+     * 每个分片的位数，与秒杀脚本中的 SHARD_SIZE 保持一致
+     */
+    public static final int SHARD_SIZE = 1 << 20;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final SeckillConfig.Rebuild config;
+
+    public SeckillOrderRecordWriter(StringRedisTemplate stringRedisTemplate, SeckillConfig seckillConfig) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.config = seckillConfig.getRebuild();
+    }
+
+    /**
+     * 把用户ID批量写入优惠券的用户订单记录
+     * @param voucherId 优惠券ID
+     * @param buckets 优惠券的库存桶数量，用户记录写入所在的库存桶
+     * @param userIds 用户ID(可以是数据库游标，逐个读取)
+     * @param ttlMillis 分片的过期时间（毫秒），不大于0时不设置
+     * @return 写入的用户数量
+     */
+    public long write(Long voucherId, int buckets, Iterator<Long> userIds, long ttlMillis) {
+        StockLayout layout = new StockLayout(voucherId, null, buckets, 0, 0, 0);
+        Map<String, byte[]> shards = new HashMap<>();
+        long buffered = 0;
+        long count = 0;
+        while (userIds.hasNext()) {
+            Long userId = userIds.next();
+            if (userId == null) {
+                continue;
+            }
+            String shard = layout.orderShardKey(userId);
+            int offset = (int) layout.orderOffset(userId);
+            int index = offset >>> 3;
+            byte[] bitmap = shards.get(shard);
+            if (bitmap == null || bitmap.length <= index) {
+                // 按需扩容，稀疏的分片不会占用整个分片的内存
+                int length = Math.max(index + 1, bitmap == null ? 0 : Math.min(bitmap.length * 2, SHARD_SIZE >>> 3));
+                buffered += length - (bitmap == null ? 0 : bitmap.length);
+                bitmap = bitmap == null ? new byte[length] : Arrays.copyOf(bitmap, length);
+                shards.put(shard, bitmap);
+            }
+            // Redis位图的第0位是第一个字节的最高位
+            bitmap[index] |= (byte) (0x80 >>> (offset & 7));
+            count++;
+            if (buffered >= config.getBufferBytes()) {
+                flush(voucherId, shards, ttlMillis);
+                buffered = 0;
+            }
+        }
+        flush(voucherId, shards, ttlMillis);
+        return count;
+    }
+
+    /**
+     * 通过pipeline把缓冲的分片合并到Redis
+     */
+    private void flush(Long voucherId, Map<String, byte[]> shards, long ttlMillis) {
+        if (shards.isEmpty()) {
+            return;
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Map.Entry<String, byte[]> entry : shards.entrySet()) {
+                // 临时key与分片key的hash tag相同，BITOP在同一个slot内执行
+                byte[] shardKey = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                byte[] tempKey = (entry.getKey() + ":rebuild").getBytes(StandardCharsets.UTF_8);
+                connection.stringCommands().set(tempKey, entry.getValue());
+                connection.stringCommands().bitOp(RedisStringCommands.BitOperation.OR, shardKey, shardKey, tempKey);
+                connection.keyCommands().del(tempKey);
+                if (ttlMillis > 0) {
+                    connection.keyCommands().pExpire(shardKey, ttlMillis);
+                }
+            }
+            return null;
+        });
+        log.debug("用户订单记录分片写入完成，优惠券ID: {}，分片数量: {}", voucherId, shards.size());
+        shards.clear();
+    }
+}
@@ -0,0 +1,205 @@
+package com.hmdp.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmdp.config.RabbitMQConfig;
+import com.hmdp.config.SeckillConfig;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.SeckillResultMessage;
+import com.hmdp.entity.VoucherOrder;
+import com.rabbitmq.client.Channel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.ORDER_STATUS_FAILED;
+import static com.hmdp.utils.RedisConstants.ORDER_STATUS_PENDING;
+import static com.hmdp.utils.RedisConstants.ORDER_STATUS_SUCCESS;
+
+/**
+ * 秒杀结果推送
+ * 订单处理完成(事务提交)后通过 seckill.result.fanout 广播到所有节点，
+ * 每个节点把结果写入本地订单结果表，并唤醒在本节点长轮询等待该结果的请求；
+ * 轮询查询结果时也优先读本地订单结果表，不再逐级查询缓存和数据库
+ */
+@Slf4j
+@Component
+public class SeckillResultNotifier {
+
+    private static final String PROCESSING_MESSAGE = "订单正在处理中，请稍后查询";
+
+    @Resource
+    private RabbitTemplate rabbitTemplate;
+
+    private final SeckillConfig.ResultNotify config;
+
+    /**
+     * 本地订单结果表，key为 用户ID:优惠券ID
+     */
+    private final Cache<String, VoucherOrder> results;
+
+    /**
+     * 等待结果的长轮询请求，key为 用户ID:优惠券ID
+     */
+    private final Map<String, List<DeferredResult<Result>>> waiters = new ConcurrentHashMap<>();
+
+    public SeckillResultNotifier(SeckillConfig seckillConfig) {
+        this.config = seckillConfig.getResultNotify();
+        this.results = Caffeine.newBuilder()
+                .maximumSize(config.getMaxSize())
+                .expireAfterWrite(config.getExpireSeconds(), TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * 查询本地订单结果表
+     * @return 订单结果，本节点没有记录时返回null
+     */
+    public VoucherOrder getResult(Long userId, Long voucherId) {
+        return results.getIfPresent(key(userId, voucherId));
+    }
+
+    /**
+     * 记录本节点受理的处理中订单(已有结果时不覆盖)
+     */
+    public void markPending(VoucherOrder voucherOrder) {
+        VoucherOrder pending = new VoucherOrder();
+        pending.setId(voucherOrder.getId());
+        pending.setUserId(voucherOrder.getUserId());
+        pending.setVoucherId(voucherOrder.getVoucherId());
+        pending.setProcessStatus(ORDER_STATUS_PENDING);
+        results.asMap().putIfAbsent(key(voucherOrder.getUserId(), voucherOrder.getVoucherId()), pending);
+    }
+
+    /**
+     * 长轮询等待秒杀结果，超时返回处理中，由客户端重新发起
+     */
+    public DeferredResult<Result> await(Long userId, Long voucherId) {
+        String key = key(userId, voucherId);
+        DeferredResult<Result> deferredResult =
+                new DeferredResult<>(config.getWaitTimeoutMillis(), Result.ok(PROCESSING_MESSAGE));
+        VoucherOrder order = results.getIfPresent(key);
+        if (isFinished(order)) {
+            deferredResult.setResult(toResult(order));
+            return deferredResult;
+        }
+
+        waiters.compute(key, (k, list) -> {
+            if (list == null) {
+                list = new ArrayList<>(1);
+            }
+            list.add(deferredResult);
+            return list;
+        });
+        deferredResult.onCompletion(() -> waiters.computeIfPresent(key, (k, list) -> {
+            list.remove(deferredResult);
+            return list.isEmpty() ? null : list;
+        }));
+
+        // 注册后再检查一次，避免注册前刚到达的结果被错过
+        order = results.getIfPresent(key);
+        if (isFinished(order)) {
+            deferredResult.setResult(toResult(order));
+        }
+        return deferredResult;
+    }
+
+    /**
+     * 广播订单处理结果，处于事务中时在事务提交后广播
+     */
+    public void publishAfterCommit(List<VoucherOrder> voucherOrders) {
+        if (voucherOrders.isEmpty()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publish(voucherOrders);
+                }
+            });
+        } else {
+            publish(voucherOrders);
+        }
+    }
+
+    private void publish(List<VoucherOrder> voucherOrders) {
+        List<VoucherOrder> orders = new ArrayList<>(voucherOrders.size());
+        for (VoucherOrder voucherOrder : voucherOrders) {
+            VoucherOrder order = new VoucherOrder();
+            order.setId(voucherOrder.getId());
+            order.setUserId(voucherOrder.getUserId());
+            order.setVoucherId(voucherOrder.getVoucherId());
+            order.setProcessStatus(voucherOrder.getProcessStatus());
+            orders.add(order);
+        }
+        SeckillResultMessage message = new SeckillResultMessage();
+        message.setOrders(orders);
+        message.setTimestamp(System.currentTimeMillis());
+        try {
+            rabbitTemplate.convertAndSend(RabbitMQConfig.SECKILL_RESULT_EXCHANGE, "", message);
+        } catch (Exception e) {
+            // 推送失败不影响订单，客户端会退回到轮询查询
+            log.error("广播秒杀结果失败，订单数量: {}", orders.size(), e);
+        }
+    }
+
+    /**
+     * 接收秒杀结果广播，更新本地订单结果表并唤醒等待的请求
+     */
+    @RabbitListener(queues = "#{" + RabbitMQConfig.NODE_RESULT_QUEUE + ".name}")
+    public void handleResultMessage(SeckillResultMessage message, Channel channel, Message amqpMessage) throws IOException {
+        try {
+            if (message == null || message.getOrders() == null) {
+                return;
+            }
+            for (VoucherOrder order : message.getOrders()) {
+                String key = key(order.getUserId(), order.getVoucherId());
+                results.put(key, order);
+                List<DeferredResult<Result>> list = waiters.remove(key);
+                if (list != null) {
+                    Result result = toResult(order);
+                    list.forEach(deferredResult -> deferredResult.setResult(result));
+                }
+            }
+        } finally {
+            channel.basicAck(amqpMessage.getMessageProperties().getDeliveryTag(), false);
+        }
+    }
+
+    /**
+     * 根据订单处理状态生成返回结果
+     */
+    public static Result toResult(VoucherOrder order) {
+        switch (order.getProcessStatus()) {
+            case ORDER_STATUS_SUCCESS:
+                return Result.ok(order.getId());
+            case ORDER_STATUS_FAILED:
+                return Result.fail("订单处理失败");
+            case ORDER_STATUS_PENDING:
+            default:
+                return Result.ok(PROCESSING_MESSAGE);
+        }
+    }
+
+    private static boolean isFinished(VoucherOrder order) {
+        return order != null && order.getProcessStatus() != ORDER_STATUS_PENDING;
+    }
+
+    private static String key(Long userId, Long voucherId) {
+        return userId + ":" + voucherId;
+    }
+}
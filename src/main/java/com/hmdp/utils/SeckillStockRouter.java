@@ -0,0 +1,181 @@
+package com.hmdp.utils;
+
+import com.hmdp.utils.stock.StockLayout;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 秒杀库存桶路由
+ * 应用节点按本地缓存的库存布局选择用户所在的库存桶(userId % 桶数量)，秒杀脚本只访问这一个桶的库存key和用户订单记录key
+ * (相同的hash tag，位于同一个slot)，不同的桶分布到不同的分片和CPU核；
+ * 用户所在的桶取完后，先用单独的脚本调用从其他桶借出一个库存，再在用户所在的桶上以reserved模式记录订单，
+ * 记录失败(重复下单、时间窗口之外)时把借出的库存还回去；重复下单判断始终在用户所在的桶上进行，跨桶仍然正确
+ *
+ * 取完的桶在本地记录一小段时间，之后的请求直接跳过，所有桶都取完时返回库存不足，由调用方标记售罄
+ */
+@Slf4j
+@Component
+public class SeckillStockRouter {
+
+    private static final DefaultRedisScript<Long> QUEUE_SECKILL_SCRIPT;
+    private static final DefaultRedisScript<Long> TAKE_STOCK_SCRIPT;
+
+    static {
+        QUEUE_SECKILL_SCRIPT = new DefaultRedisScript<>();
+        QUEUE_SECKILL_SCRIPT.setLocation(new ClassPathResource("queue_seckill.lua"));
+        QUEUE_SECKILL_SCRIPT.setResultType(Long.class);
+
+        TAKE_STOCK_SCRIPT = new DefaultRedisScript<>();
+        TAKE_STOCK_SCRIPT.setLocation(new ClassPathResource("seckill_take_stock.lua"));
+        TAKE_STOCK_SCRIPT.setResultType(Long.class);
+    }
+
+    /**
+     * 库存未加载的返回值，调用方不能据此标记售罄
+     */
+    public static final long NOT_LOADED = 5;
+
+    /**
+     * 库存桶取完后在本地跳过的时间（毫秒），之后再尝试一次(期间可能有取消的订单归还库存)
+     */
+    private static final long EMPTY_BUCKET_MILLIS = 500;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final StockInitializer stockInitializer;
+    private final SeckillAdmissionBatcher seckillAdmissionBatcher;
+
+    /**
+     * 每个优惠券各个库存桶的本地取完标记(记录到期时间)
+     */
+    private final Map<Long, AtomicLongArray> emptyUntil = new ConcurrentHashMap<>();
+
+    public SeckillStockRouter(StringRedisTemplate stringRedisTemplate, StockInitializer stockInitializer,
+                              SeckillAdmissionBatcher seckillAdmissionBatcher) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.stockInitializer = stockInitializer;
+        this.seckillAdmissionBatcher = seckillAdmissionBatcher;
+    }
+
+    /**
+     * 执行秒杀：判断资格、扣减库存并记录用户订单
+     * @param voucherId 优惠券ID
+     * @param userId 用户ID
+     * @param orderId 订单ID
+     * @param streamKey 订单Stream key，不使用Redis Stream传输订单时为null
+     * @return 0：成功；1：库存不足；2：重复下单；3：尚未开始；4：已经结束；5：库存未加载
+     */
+    public long admit(Long voucherId, Long userId, Long orderId, String streamKey) {
+        StockLayout layout = stockInitializer.getLayout(voucherId);
+        if (layout == null) {
+            // 库存未加载(尚未预热、已经释放或元数据丢失)，不是售罄
+            return NOT_LOADED;
+        }
+        int home = layout.homeBucket(userId);
+        AtomicLongArray empty = emptyBuckets(layout);
+
+        long result = 1;
+        if (!isEmpty(empty, home)) {
+            Long batched = seckillAdmissionBatcher.isEnabled()
+                    ? seckillAdmissionBatcher.admit(layout, userId, orderId, streamKey) : null;
+            // 缓冲区已满、无法安排提交任务或等待超时时单独执行
+            result = batched != null ? batched : execute(layout, userId, orderId, streamKey, false);
+            if (result == 1) {
+                markEmpty(empty, home);
+            }
+        }
+        if (result == 1 && layout.getBuckets() > 1) {
+            result = borrow(layout, empty, home, userId, orderId, streamKey);
+        }
+        // 秒杀成功后不再删除优惠券缓存和用户订单缓存：优惠券信息不随下单变化，保留预热的缓存；
+        // 用户订单缓存在订单落库时由消费者覆盖，之前命中的空值按"处理中"返回，与受理节点的结果一致
+        return result;
+    }
+
+    /**
+     * 用户所在的桶已经取完，从其他桶借出一个库存后在用户所在的桶上记录订单
+     * 从随机位置开始尝试其他桶，避免所有借库存的请求集中到相邻的桶；
+     * 借出和记录是两次调用，进程在两者之间崩溃时会少一个库存(结束后对账时作为Redis库存偏少的已知原因报告)
+     */
+    private long borrow(StockLayout layout, AtomicLongArray empty, int home,
+                        Long userId, Long orderId, String streamKey) {
+        int others = layout.getBuckets() - 1;
+        int start = ThreadLocalRandom.current().nextInt(others);
+        for (int i = 0; i < others; i++) {
+            int bucket = (home + 1 + (start + i) % others) % layout.getBuckets();
+            if (isEmpty(empty, bucket)) {
+                continue;
+            }
+            Long taken = stringRedisTemplate.execute(TAKE_STOCK_SCRIPT,
+                    Collections.singletonList(layout.stockKey(bucket)));
+            if (taken == null || taken == 0) {
+                markEmpty(empty, bucket);
+                continue;
+            }
+            long result = execute(layout, userId, orderId, streamKey, true);
+            if (result != 0) {
+                // 没有记录订单，还回借出的库存
+                stockInitializer.returnToBucket(layout, bucket, 1);
+            }
+            return result;
+        }
+        return 1;
+    }
+
+    /**
+     * 在用户所在的库存桶上执行秒杀脚本
+     * @param reserved 库存是否已经从其他桶借出
+     */
+    private long execute(StockLayout layout, Long userId, Long orderId, String streamKey, boolean reserved) {
+        List<String> keys = new ArrayList<>(3);
+        keys.add(layout.stockKey(layout.homeBucket(userId)));
+        keys.add(layout.orderShardKey(userId));
+        if (streamKey != null) {
+            keys.add(streamKey);
+        }
+        Long result = stringRedisTemplate.execute(
+                QUEUE_SECKILL_SCRIPT,
+                keys,
+                userId.toString(), orderId.toString(), layout.getVoucherId().toString(),
+                String.valueOf(layout.orderOffset(userId)),
+                String.valueOf(layout.getBeginMillis()), String.valueOf(layout.getEndMillis()),
+                String.valueOf(layout.getExpireAtMillis()), reserved ? "1" : "0");
+        return result == null ? 1 : result;
+    }
+
+    private AtomicLongArray emptyBuckets(StockLayout layout) {
+        AtomicLongArray empty = emptyUntil.get(layout.getVoucherId());
+        if (empty == null || empty.length() != layout.getBuckets()) {
+            // 首次访问或桶数量变化
+            empty = new AtomicLongArray(layout.getBuckets());
+            emptyUntil.put(layout.getVoucherId(), empty);
+        }
+        return empty;
+    }
+
+    private static boolean isEmpty(AtomicLongArray empty, int bucket) {
+        return empty.get(bucket) > System.currentTimeMillis();
+    }
+
+    private static void markEmpty(AtomicLongArray empty, int bucket) {
+        empty.set(bucket, System.currentTimeMillis() + EMPTY_BUCKET_MILLIS);
+    }
+
+    /**
+     * 释放优惠券的本地取完标记(秒杀结束后调用)
+     * @param voucherId 优惠券ID
+     */
+    public void release(Long voucherId) {
+        emptyUntil.remove(voucherId);
+    }
+}
@@ -0,0 +1,278 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.SecureUtil;
+import cn.hutool.crypto.digest.HMac;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmdp.config.SeckillConfig;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.WaitingRoomTicket;
+import com.hmdp.utils.stock.StockLayout;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ROOM_KEY;
+
+/**
+ * 秒杀排队(虚拟等候室)
+ * 用户先领取排队号(Redis自增序号，每人只有一个)，排队号带HMAC签名，由用户自己保存；
+ * 从开始放行时间起按固定速率放行：经过t毫秒后序号不超过 t * 放行速率 / 1000 的用户可以秒杀，
+ * 查询排队位置和秒杀前的放行检查只需要校验签名和计算，不访问订单链路
+ *
+ * 开始放行时间是秒杀开始时间(由预热任务写入)，第一个排队号在开始之后才发出时取其领取时间；
+ * 排队记录与库存一起在秒杀结束并保留一段时间后过期，秒杀期间不会因为无人领取而重置
+ */
+@Slf4j
+@Component
+public class SeckillWaitingRoom {
+
+    /**
+     * 秒杀请求携带排队号的请求头
+     */
+    public static final String TICKET_HEADER = "X-Seckill-Ticket";
+
+    /**
+     * 领取排队号脚本，返回 排队序号, 开始放行时间
+     */
+    private static final DefaultRedisScript<List<Long>> TICKET_SCRIPT = RedisScripts.listScript("waiting_room_ticket.lua");
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private StockInitializer stockInitializer;
+
+    private final SeckillConfig.WaitingRoom config;
+    /**
+     * HMac内部持有Mac实例，不是线程安全的，每个线程使用自己的实例
+     */
+    private final ThreadLocal<HMac> hmac;
+
+    /**
+     * 各优惠券开始放行的时间，在本地短暂缓存，重新预热后各节点很快读到新的时间
+     */
+    private final Cache<Long, Long> openTimes;
+
+    /**
+     * 旧版本配置文件中公开的默认密钥，不能继续使用
+     */
+    private static final String LEGACY_DEFAULT_SECRET = "hmdp-seckill-waiting-room";
+
+    public SeckillWaitingRoom(SeckillConfig seckillConfig) {
+        this.config = seckillConfig.getWaitingRoom();
+        String secret = config.getSecret();
+        if (config.isEnabled() && (StrUtil.isBlank(secret) || LEGACY_DEFAULT_SECRET.equals(secret))) {
+            // 密钥公开时任何人都能签发序号为1的排队号，直接跳过排队
+            throw new IllegalStateException("启用秒杀排队时必须通过环境变量 SECKILL_WAITING_ROOM_SECRET 设置排队号签名密钥");
+        }
+        this.hmac = ThreadLocal.withInitial(() -> SecureUtil.hmacSha256(secret));
+        this.openTimes = Caffeine.newBuilder()
+                .expireAfterWrite(config.getOpenTimeCacheMillis(), TimeUnit.MILLISECONDS)
+                .maximumSize(10000)
+                .build();
+    }
+
+    /**
+     * 是否启用排队
+     */
+    public boolean isEnabled() {
+        return config.isEnabled();
+    }
+
+    /**
+     * 领取排队号，同一用户重复领取时返回原来的位置
+     * @param voucherId 优惠券ID
+     * @param userId 用户ID
+     * @return 排队状态
+     */
+    public WaitingRoomTicket enter(Long voucherId, Long userId) {
+        long now = System.currentTimeMillis();
+        String prefix = SECKILL_ROOM_KEY + voucherId;
+        // 秒杀开始时间和排队记录的过期时间与库存一致，库存未加载时按领取时间放行
+        StockLayout layout = stockInitializer.getLayout(voucherId);
+        long beginMillis = layout == null ? 0 : layout.getBeginMillis();
+        long expireAtMillis = layout == null ? 0 : layout.getExpireAtMillis();
+        List<Long> result = stringRedisTemplate.execute(TICKET_SCRIPT,
+                Arrays.asList(prefix + ":users", prefix + ":seq", prefix + ":open"),
+                userId.toString(), String.valueOf(now), String.valueOf(config.getTicketTtlSeconds()),
+                String.valueOf(beginMillis), String.valueOf(expireAtMillis));
+        long seq = result.get(0);
+        long openTime = result.get(1);
+        openTimes.put(voucherId, openTime);
+
+        String data = voucherId + "." + userId + "." + seq + "." + now;
+        String ticket = data + "." + hmac.get().digestHex(data);
+        log.debug("领取排队号，优惠券ID: {}，用户ID: {}，序号: {}", voucherId, userId, seq);
+        return status(ticket, seq, openTime, now);
+    }
+
+    /**
+     * 查询排队位置
+     * @param voucherId 优惠券ID
+     * @param ticket 排队号
+     * @return 排队状态
+     */
+    public Result position(Long voucherId, String ticket) {
+        Ticket parsed = parse(ticket);
+        if (parsed == null || !parsed.voucherId.equals(voucherId)) {
+            return Result.fail("排队号无效");
+        }
+        long now = System.currentTimeMillis();
+        if (isExpired(parsed, now)) {
+            return Result.fail("排队号已过期，请重新排队");
+        }
+        return Result.ok(status(ticket, parsed.seq, openTime(voucherId), now));
+    }
+
+    /**
+     * 秒杀前的放行检查
+     * @param voucherId 优惠券ID
+     * @param userId 当前用户ID
+     * @param ticket 排队号
+     * @return 未放行时返回失败结果，已放行返回null
+     */
+    public Result checkAdmission(Long voucherId, Long userId, String ticket) {
+        if (StrUtil.isBlank(ticket)) {
+            return Result.fail("请先排队");
+        }
+        Ticket parsed = parse(ticket);
+        if (parsed == null || !parsed.voucherId.equals(voucherId) || !parsed.userId.equals(userId)) {
+            return Result.fail("排队号无效");
+        }
+        long now = System.currentTimeMillis();
+        if (isExpired(parsed, now)) {
+            return Result.fail("排队号已过期，请重新排队");
+        }
+        long position = parsed.seq - released(openTime(voucherId), now);
+        if (position > 0) {
+            return Result.fail("排队中，前面还有" + position + "人");
+        }
+        return null;
+    }
+
+    /**
+     * 把开始放行时间设为秒杀开始时间(预热任务在库存加载后调用)
+     * 在开始前领取的排队号都从开始时间起放行，与第一个排队号何时发出无关
+     * @param voucherId 优惠券ID
+     */
+    public void open(Long voucherId) {
+        StockLayout layout = stockInitializer.getLayout(voucherId);
+        if (layout == null || layout.getBeginMillis() <= 0) {
+            return;
+        }
+        String openKey = SECKILL_ROOM_KEY + voucherId + ":open";
+        stringRedisTemplate.opsForValue().set(openKey, String.valueOf(layout.getBeginMillis()));
+        if (layout.getExpireAtMillis() > 0) {
+            stringRedisTemplate.expireAt(openKey, new Date(layout.getExpireAtMillis()));
+        } else {
+            stringRedisTemplate.expire(openKey, config.getTicketTtlSeconds(), TimeUnit.SECONDS);
+        }
+        openTimes.put(voucherId, layout.getBeginMillis());
+    }
+
+    /**
+     * 释放本节点缓存的放行时间(秒杀结束后调用)
+     * @param voucherId 优惠券ID
+     */
+    public void release(Long voucherId) {
+        openTimes.invalidate(voucherId);
+    }
+
+    /**
+     * 删除优惠券的排队记录(秒杀结束后调用)
+     * @param voucherId 优惠券ID
+     */
+    public void clear(Long voucherId) {
+        String prefix = SECKILL_ROOM_KEY + voucherId;
+        stringRedisTemplate.delete(Arrays.asList(prefix + ":users", prefix + ":seq", prefix + ":open"));
+    }
+
+    private WaitingRoomTicket status(String ticket, long seq, Long openTime, long now) {
+        long position = Math.max(0, seq - released(openTime, now));
+        WaitingRoomTicket status = new WaitingRoomTicket();
+        status.setTicket(ticket);
+        status.setPosition(position);
+        status.setAdmitted(position == 0);
+        status.setWaitMillis(position * 1000 / config.getReleaseRate());
+        return status;
+    }
+
+    /**
+     * 截至当前已经放行的人数
+     */
+    private long released(Long openTime, long now) {
+        if (openTime == null) {
+            return 0;
+        }
+        return Math.max(0, now - openTime) * config.getReleaseRate() / 1000;
+    }
+
+    private Long openTime(Long voucherId) {
+        return openTimes.get(voucherId, id -> {
+            String value = stringRedisTemplate.opsForValue().get(SECKILL_ROOM_KEY + id + ":open");
+            return value == null ? null : Long.valueOf(value);
+        });
+    }
+
+    private boolean isExpired(Ticket ticket, long now) {
+        return now - ticket.issuedAt > config.getTicketTtlSeconds() * 1000;
+    }
+
+    /**
+     * 解析并校验排队号：优惠券ID.用户ID.序号.领取时间.签名
+     * @return 签名不正确或格式错误时返回null
+     */
+    private Ticket parse(String ticket) {
+        if (StrUtil.isBlank(ticket)) {
+            return null;
+        }
+        int index = ticket.lastIndexOf('.');
+        if (index < 0) {
+            return null;
+        }
+        String data = ticket.substring(0, index);
+        String signature = ticket.substring(index + 1);
+        if (!MessageDigest.isEqual(hmac.get().digestHex(data).getBytes(StandardCharsets.UTF_8),
+                signature.getBytes(StandardCharsets.UTF_8))) {
+            return null;
+        }
+        String[] parts = data.split("\\.");
+        if (parts.length != 4) {
+            return null;
+        }
+        try {
+            return new Ticket(Long.valueOf(parts[0]), Long.valueOf(parts[1]),
+                    Long.parseLong(parts[2]), Long.parseLong(parts[3]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 解析后的排队号
+     */
+    private static class Ticket {
+        private final Long voucherId;
+        private final Long userId;
+        private final long seq;
+        private final long issuedAt;
+
+        Ticket(Long voucherId, Long userId, long seq, long issuedAt) {
+            this.voucherId = voucherId;
+            this.userId = userId;
+            this.seq = seq;
+            this.issuedAt = issuedAt;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.RabbitMQConfig;
+import com.hmdp.dto.CacheChangeMessage;
+import com.rabbitmq.client.Channel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_EMPTY_KEY;
+
+/**
+ * 售罄标记本地注册表
+ * 优惠券售罄后在JVM内记录，并通过cache.fanout广播到所有节点，
+ * 之后的秒杀请求直接在内存中拒绝，不再访问Redis
+ */
+@Slf4j
+@Component
+public class SoldOutRegistry {
+
+    /**
+     * 广播消息的操作类型
+     */
+    public static final String OPERATION_SOLD_OUT = "soldout";
+    public static final String OPERATION_SOLD_OUT_RESET = "soldout_reset";
+
+    @Resource
+    private RabbitTemplate rabbitTemplate;
+
+    /**
+     * 已售罄的优惠券ID
+     */
+    private final Set<Long> soldOutVouchers = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 最近一次清除售罄标记的时间，用于丢弃清除之前发出、延迟到达的售罄广播
+     */
+    private final Map<Long, Long> resetTimes = new ConcurrentHashMap<>();
+
+    /**
+     * 判断优惠券是否已售罄
+     * @param voucherId 优惠券ID
+     * @return 是否已售罄
+     */
+    public boolean isSoldOut(Long voucherId) {
+        return soldOutVouchers.contains(voucherId);
+    }
+
+    /**
+     * 标记优惠券售罄，仅在本节点首次标记时广播
+     * @param voucherId 优惠券ID
+     */
+    public void markSoldOut(Long voucherId) {
+        markSoldOut(voucherId, System.currentTimeMillis());
+    }
+
+    /**
+     * 标记优惠券售罄，仅在本节点首次标记时广播
+     * 发现售罄之后库存又被重新加载(清除过售罄标记)时不再标记，避免旧库存的售罄结果覆盖新库存
+     * @param voucherId 优惠券ID
+     * @param observedAt 发现售罄的时间(执行秒杀脚本之前的时间)
+     */
+    public void markSoldOut(Long voucherId, long observedAt) {
+        if (isResetAfter(voucherId, observedAt)) {
+            return;
+        }
+        if (soldOutVouchers.add(voucherId)) {
+            if (isResetAfter(voucherId, observedAt)) {
+                // 标记期间库存被重新加载
+                soldOutVouchers.remove(voucherId);
+                return;
+            }
+            log.info("优惠券已售罄，设置本地售罄标记，优惠券ID: {}", voucherId);
+            broadcast(voucherId, OPERATION_SOLD_OUT, observedAt);
+        }
+    }
+
+    /**
+     * 清除售罄标记(库存重新加载时调用)，并通知其他节点
+     * @param voucherId 优惠券ID
+     */
+    public void reset(Long voucherId) {
+        long now = System.currentTimeMillis();
+        resetTimes.merge(voucherId, now, Math::max);
+        soldOutVouchers.remove(voucherId);
+        broadcast(voucherId, OPERATION_SOLD_OUT_RESET, now);
+    }
+
+    /**
+     * 释放本节点的售罄标记(秒杀结束后调用，不广播)
+     * @param voucherId 优惠券ID
+     */
+    public void release(Long voucherId) {
+        soldOutVouchers.remove(voucherId);
+        resetTimes.remove(voucherId);
+    }
+
+    /**
+     * 售罄标记是否在指定时间之后被清除过
+     */
+    private boolean isResetAfter(Long voucherId, long time) {
+        return time < resetTimes.getOrDefault(voucherId, 0L);
+    }
+
+    /**
+     * 广播售罄标记变更
+     */
+    private void broadcast(Long voucherId, String operation, long timestamp) {
+        CacheChangeMessage message = new CacheChangeMessage();
+        message.setKey(SECKILL_EMPTY_KEY + voucherId);
+        message.setOperation(operation);
+        message.setData(voucherId);
+        message.setTimestamp(timestamp);
+        try {
+            rabbitTemplate.convertAndSend(RabbitMQConfig.CACHE_EXCHANGE, "", message);
+        } catch (Exception e) {
+            // 广播失败不影响本节点，其他节点会在自己执行脚本时发现售罄
+            log.error("广播售罄标记失败，优惠券ID: {}", voucherId, e);
+        }
+    }
+
+    /**
+     * 处理其他节点广播的售罄标记
+     */
+    @RabbitListener(queues = "#{" + RabbitMQConfig.NODE_BROADCAST_QUEUE + ".name}")
+    public void handleSoldOutMessage(CacheChangeMessage message, Channel channel, Message amqpMessage) throws IOException {
+        try {
+            if (message == null || message.getData() == null) {
+                return;
+            }
+            Long voucherId = Long.valueOf(message.getData().toString());
+            if (OPERATION_SOLD_OUT.equals(message.getOperation())) {
+                if (isResetAfter(voucherId, message.getTimestamp())) {
+                    return;
+                }
+                soldOutVouchers.add(voucherId);
+                log.debug("收到售罄广播，优惠券ID: {}", voucherId);
+            } else if (OPERATION_SOLD_OUT_RESET.equals(message.getOperation())) {
+                resetTimes.merge(voucherId, message.getTimestamp(), Math::max);
+                soldOutVouchers.remove(voucherId);
+                log.debug("收到售罄标记清除广播，优惠券ID: {}", voucherId);
+            }
+        } finally {
+            channel.basicAck(amqpMessage.getMessageProperties().getDeliveryTag(), false);
+        }
+    }
+}
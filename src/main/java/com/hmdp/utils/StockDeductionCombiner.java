@@ -0,0 +1,169 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.SeckillConfig;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.mq.SeckillConsumerTuner;
+import com.hmdp.service.IVoucherOrderService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 热点库存扣减合并器
+ * 消费者把订单交给合并器后不等待数据库，同一优惠券的订单在一个很短的时间窗口内合并，
+ * 由一次事务完成 多行插入 + 一次 stock=stock-N 的扣减，再把每个订单的结果(成功/库存不足)分别返回；
+ * 每个优惠券同一时刻只有一个合并批次在执行，热点行上的提交次数从每单一次降到每批一次
+ */
+@Slf4j
+@Component
+public class StockDeductionCombiner implements DisposableBean {
+
+    /**
+     * 延迟注入，避免与订单服务形成循环依赖
+     */
+    @Resource
+    @Lazy
+    private IVoucherOrderService voucherOrderService;
+
+    @Resource
+    private SeckillConsumerTuner seckillConsumerTuner;
+
+    private final SeckillConfig.Combiner config;
+    private final ScheduledExecutorService combineExecutor;
+
+    /**
+     * 每个优惠券一个通道
+     */
+    private final Map<Long, Lane> lanes = new ConcurrentHashMap<>();
+
+    public StockDeductionCombiner(SeckillConfig seckillConfig) {
+        this.config = seckillConfig.getOrder().getCombiner();
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.combineExecutor = Executors.newScheduledThreadPool(config.getThreads(), r -> {
+            Thread thread = new Thread(r, "stock-combiner-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 是否启用库存扣减合并
+     */
+    public boolean isEnabled() {
+        return config.isEnabled();
+    }
+
+    /**
+     * 提交一个待扣减库存的订单
+     * @param voucherOrder 订单
+     * @return 订单处理状态(成功/失败)，订单之前已经处理过时为null；事务失败时异常完成
+     */
+    public CompletableFuture<Integer> submit(VoucherOrder voucherOrder) {
+        Lane lane = lanes.computeIfAbsent(voucherOrder.getVoucherId(), Lane::new);
+        PendingOrder pendingOrder = new PendingOrder(voucherOrder);
+        lane.queue.add(pendingOrder);
+        lane.scheduleCombine();
+        return pendingOrder.future;
+    }
+
+    /**
+     * 释放优惠券的合并通道(秒杀结束后调用)，已经安排的合并批次仍会执行完
+     * @param voucherId 优惠券ID
+     */
+    public void release(Long voucherId) {
+        lanes.remove(voucherId);
+    }
+
+    @Override
+    public void destroy() {
+        combineExecutor.shutdown();
+    }
+
+    /**
+     * 单个优惠券的合并通道
+     */
+    private class Lane {
+        private final Long voucherId;
+        private final ConcurrentLinkedQueue<PendingOrder> queue = new ConcurrentLinkedQueue<>();
+        /**
+         * 是否已经安排或正在执行合并批次
+         */
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        Lane(Long voucherId) {
+            this.voucherId = voucherId;
+        }
+
+        void scheduleCombine() {
+            if (scheduled.compareAndSet(false, true)) {
+                combineExecutor.schedule(this::combine, config.getWindowMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
+
+        void combine() {
+            List<PendingOrder> batch = new ArrayList<>();
+            PendingOrder pendingOrder;
+            while (batch.size() < config.getMaxBatchSize() && (pendingOrder = queue.poll()) != null) {
+                batch.add(pendingOrder);
+            }
+            try {
+                if (!batch.isEmpty()) {
+                    execute(batch);
+                }
+            } finally {
+                // 本批执行完后才允许下一批，同一优惠券的扣减不会并发执行
+                scheduled.set(false);
+                if (!queue.isEmpty()) {
+                    scheduleCombine();
+                }
+            }
+        }
+
+        private void execute(List<PendingOrder> batch) {
+            List<VoucherOrder> voucherOrders = new ArrayList<>(batch.size());
+            batch.forEach(o -> voucherOrders.add(o.voucherOrder));
+            long begin = System.nanoTime();
+            try {
+                List<VoucherOrder> created = voucherOrderService.createVoucherOrders(voucherId, voucherOrders);
+                seckillConsumerTuner.recordPersist(System.nanoTime() - begin);
+                Map<Long, Integer> statuses = new HashMap<>(created.size() * 2);
+                created.forEach(o -> statuses.put(o.getId(), o.getProcessStatus()));
+                for (PendingOrder order : batch) {
+                    order.future.complete(statuses.get(order.voucherOrder.getId()));
+                }
+                log.debug("合并扣减库存完成，优惠券ID: {}，订单数量: {}，新建订单: {}", voucherId, batch.size(), created.size());
+            } catch (Exception e) {
+                seckillConsumerTuner.recordPersist(System.nanoTime() - begin);
+                log.error("合并扣减库存失败，优惠券ID: {}，订单数量: {}", voucherId, batch.size(), e);
+                batch.forEach(o -> o.future.completeExceptionally(e));
+            }
+        }
+    }
+
+    /**
+     * 等待合并的订单
+     */
+    private static class PendingOrder {
+        private final VoucherOrder voucherOrder;
+        private final CompletableFuture<Integer> future = new CompletableFuture<>();
+
+        PendingOrder(VoucherOrder voucherOrder) {
+            this.voucherOrder = voucherOrder;
+        }
+    }
+}
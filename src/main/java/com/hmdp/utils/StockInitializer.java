@@ -1,10 +1,36 @@
 package com.hmdp.utils;
 
+import cn.hutool.core.util.StrUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmdp.config.SeckillConfig;
+import com.hmdp.utils.stock.StockLayout;
+import com.hmdp.utils.stock.StockStrategy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.DataType;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_KEY;
 
 /**
  * 库存队列初始化工具类
@@ -15,27 +41,350 @@ public class StockInitializer {
 
     @Resource
     private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private SoldOutRegistry soldOutRegistry;
+    @Resource
+    private SeckillConfig seckillConfig;
 
-    private static final String STOCK_QUEUE_KEY = "seckill:queue:";
     private static final String STOCK_EMPTY_KEY = "seckill:empty:";
+    private static final String STOCK_META_KEY = "seckill:meta:";
+    private static final String META_MODE = "mode";
+    private static final String META_BUCKETS = "buckets";
+    private static final String META_BEGIN = "begin";
+    private static final String META_END = "end";
+    /**
+     * 库存加载时的临时key后缀，临时key与库存桶key的hash tag相同，可以在Cluster中RENAME
+     */
+    private static final String STOCK_LOADING_SUFFIX = ":loading";
+
+    /**
+     * 库存存储策略，key为策略名称
+     */
+    private final Map<String, StockStrategy> strategies;
 
     /**
-     * 初始化库存队列
+     * 库存布局的本地缓存，秒杀请求据此选择库存桶，不再每次读取元数据
+     */
+    private final Cache<Long, StockLayout> layouts;
+
+    public StockInitializer(List<StockStrategy> strategies, SeckillConfig seckillConfig) {
+        this.strategies = strategies.stream()
+                .collect(Collectors.toMap(StockStrategy::getName, Function.identity()));
+        this.layouts = Caffeine.newBuilder()
+                .maximumSize(10000)
+                .expireAfterWrite(seckillConfig.getStock().getLayoutCacheMillis(), TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * 初始化库存队列(使用默认的库存存储策略)
      * @param voucherId 优惠券ID
      * @param stock 库存数量
      */
     public void initStockQueue(Long voucherId, Integer stock) {
-        String queueKey = STOCK_QUEUE_KEY + voucherId;
-        // 清除之前的库存队列(如果存在)
-        stringRedisTemplate.delete(queueKey);
-        // 创建库存队列
-        for (int i = 0; i < stock; i++) {
-            stringRedisTemplate.opsForList().rightPush(queueKey, "1");
-        }
-        log.info("初始化库存队列成功，优惠券ID: {}，库存数量: {}", voucherId, stock);
+        initStock(voucherId, stock, null);
+    }
+
+    /**
+     * 按指定的存储策略初始化库存
+     * @param voucherId 优惠券ID
+     * @param stock 库存数量
+     * @param mode 库存存储策略名称(list/counter)，为空时使用默认策略
+     */
+    public void initStock(Long voucherId, Integer stock, String mode) {
+        initStock(voucherId, stock, mode, null, null, null);
+    }
+
+    /**
+     * 初始化库存，可以把热点优惠券的库存拆分到多个库存桶
+     * 库存key为 seckill:queue:{voucherId:桶号}(不分桶时只有0号桶)；库存元数据 seckill:meta:{voucherId} 记录存储策略、
+     * 桶数量和秒杀时间窗口，应用节点据此选择库存桶，并把时间窗口传给秒杀脚本；
+     * 库存key在优惠券结束后保留一段时间(供结束后对账)再过期，用户订单记录(位图分片)沿用库存的过期时间
+     * @param voucherId 优惠券ID
+     * @param stock 库存数量
+     * @param mode 库存存储策略名称(list/counter)，为空时使用默认策略
+     * @param beginTime 秒杀开始时间，为空时不限制
+     * @param endTime 秒杀结束时间，为空时不限制且不过期
+     * @param buckets 库存桶数量，为空或不大于1时不分桶
+     */
+    public void initStock(Long voucherId, Integer stock, String mode,
+                          LocalDateTime beginTime, LocalDateTime endTime, Integer buckets) {
+        StockStrategy strategy = getStrategy(mode);
+        String metaKey = STOCK_META_KEY + voucherId;
+        int bucketCount = buckets == null ? 1 : Math.max(buckets, 1);
+        int oldBucketCount = getBucketCount(voucherId);
+        Date expireAt = endTime == null ? null : new Date(getStockExpireAt(endTime));
+
+        // 库存先写入临时key再RENAME替换，替换过程中秒杀请求看到的是旧库存或新库存，
+        // 不会因为库存key暂时不存在而返回库存不足、广播售罄
+        // 库存平均分到各个桶，余数分给前面的桶
+        for (int i = 0; i < bucketCount; i++) {
+            swapIn(strategy, StockLayout.stockKey(voucherId, i),
+                    stock / bucketCount + (i < stock % bucketCount ? 1 : 0), expireAt);
+        }
+
+        // 所有桶就绪后再写入元数据(覆盖原有字段)，应用节点看到桶数量时所有桶都已经就绪
+        Map<String, String> meta = new HashMap<>(8);
+        meta.put(META_MODE, strategy.getName());
+        meta.put(META_BUCKETS, String.valueOf(bucketCount));
+        if (beginTime != null) {
+            meta.put(META_BEGIN, String.valueOf(toMillis(beginTime)));
+        } else {
+            stringRedisTemplate.opsForHash().delete(metaKey, META_BEGIN);
+        }
+        if (endTime != null) {
+            meta.put(META_END, String.valueOf(toMillis(endTime)));
+        } else {
+            stringRedisTemplate.opsForHash().delete(metaKey, META_END);
+        }
+        stringRedisTemplate.opsForHash().putAll(metaKey, meta);
+        if (expireAt != null) {
+            stringRedisTemplate.expireAt(metaKey, expireAt);
+        } else {
+            stringRedisTemplate.persist(metaKey);
+        }
+        layouts.invalidate(voucherId);
+
+        // 桶数量减少时删除多出来的旧库存桶
+        if (oldBucketCount > bucketCount) {
+            List<String> staleKeys = new ArrayList<>(oldBucketCount - bucketCount);
+            for (int i = bucketCount; i < oldBucketCount; i++) {
+                staleKeys.add(StockLayout.stockKey(voucherId, i));
+            }
+            stringRedisTemplate.delete(staleKeys);
+        }
+        log.info("初始化库存成功，优惠券ID: {}，库存数量: {}，存储策略: {}，库存桶: {}，时间窗口: {} ~ {}",
+                voucherId, stock, strategy.getName(), bucketCount, beginTime, endTime);
         
         // 重置库存为空标记
         stringRedisTemplate.delete(STOCK_EMPTY_KEY + voucherId);
+        // 清除所有节点的本地售罄标记
+        soldOutRegistry.reset(voucherId);
+    }
+
+    /**
+     * 把库存写入临时key，再RENAME替换库存桶key(原子操作，不存在库存key缺失的窗口)
+     * @param expireAt 过期时间，为空时不过期(RENAME保留临时key的过期时间)
+     */
+    private void swapIn(StockStrategy strategy, String bucketKey, int stock, Date expireAt) {
+        String loadingKey = bucketKey + STOCK_LOADING_SUFFIX;
+        strategy.load(loadingKey, stock);
+        if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(loadingKey))) {
+            // 库存队列为空时不会创建key，与取空后的库存桶一致
+            stringRedisTemplate.delete(bucketKey);
+            return;
+        }
+        if (expireAt != null) {
+            stringRedisTemplate.expireAt(loadingKey, expireAt);
+        }
+        stringRedisTemplate.rename(loadingKey, bucketKey);
+    }
+
+    /**
+     * 按当前时间窗口预加载库存
+     * 存储策略和桶数量以数据库(tb_seckill_voucher)为准，不从Redis元数据读回，元数据丢失后热点优惠券仍按原来的桶数量加载
+     * @param voucherId 优惠券ID
+     * @param stock 库存数量
+     * @param mode 库存存储策略名称，为空时使用默认策略
+     * @param beginTime 秒杀开始时间
+     * @param endTime 秒杀结束时间
+     * @param buckets 库存桶数量，为空或不大于1时不分桶
+     * @return 是否重新加载(相同时间窗口的库存已经加载过时返回false)
+     */
+    public boolean prepareStock(Long voucherId, Integer stock, String mode,
+                                LocalDateTime beginTime, LocalDateTime endTime, Integer buckets) {
+        Object begin = stringRedisTemplate.opsForHash().get(STOCK_META_KEY + voucherId, META_BEGIN);
+        if (begin != null && begin.toString().equals(String.valueOf(toMillis(beginTime)))) {
+            return false;
+        }
+        initStock(voucherId, stock, mode, beginTime, endTime, buckets);
+        return true;
+    }
+
+    /**
+     * 获取优惠券的库存布局(本地缓存 seckill.stock.layout-cache-millis 毫秒)
+     * @param voucherId 优惠券ID
+     * @return 库存布局，库存未加载时返回null
+     */
+    public StockLayout getLayout(Long voucherId) {
+        return layouts.get(voucherId, this::loadLayout);
+    }
+
+    private StockLayout loadLayout(Long voucherId) {
+        List<Object> meta = stringRedisTemplate.opsForHash().multiGet(STOCK_META_KEY + voucherId,
+                Arrays.asList(META_MODE, META_BUCKETS, META_BEGIN, META_END));
+        if (meta.get(0) == null) {
+            // 库存未加载，不缓存
+            return null;
+        }
+        long end = parseLong(meta.get(3));
+        long expireAt = end > 0
+                ? end + TimeUnit.MINUTES.toMillis(seckillConfig.getLifecycle().getRetentionMinutes()) : 0;
+        return new StockLayout(voucherId, meta.get(0).toString(), (int) Math.max(parseLong(meta.get(1)), 1),
+                parseLong(meta.get(2)), end, expireAt);
+    }
+
+    private static long parseLong(Object value) {
+        return value == null ? 0 : Long.parseLong(value.toString());
+    }
+
+    /**
+     * 向指定的库存桶归还库存(从其他桶借出的库存没有用掉时)
+     * @param layout 库存布局
+     * @param bucket 库存桶
+     * @param count 归还的库存数量
+     */
+    public void returnToBucket(StockLayout layout, int bucket, int count) {
+        String key = layout.stockKey(bucket);
+        getStrategy(layout.getMode()).restore(key, count);
+        // 库存队列取空后key已被删除，归还后重新设置过期时间
+        if (layout.getExpireAtMillis() > 0) {
+            stringRedisTemplate.expireAt(key, new Date(layout.getExpireAtMillis()));
+        }
+    }
+
+    /**
+     * 优惠券当前的库存桶数量，库存未加载时为1
+     * @param voucherId 优惠券ID
+     */
+    public int getBucketCount(Long voucherId) {
+        Object buckets = stringRedisTemplate.opsForHash().get(STOCK_META_KEY + voucherId, META_BUCKETS);
+        return buckets == null ? 1 : Math.max(Integer.parseInt(buckets.toString()), 1);
+    }
+
+    /**
+     * 库存的过期时间：优惠券结束后再保留一段时间，用户订单记录与库存一起过期
+     * @param endTime 秒杀结束时间
+     * @return 过期时间的毫秒时间戳
+     */
+    public long getStockExpireAt(LocalDateTime endTime) {
+        return toMillis(endTime) + TimeUnit.MINUTES.toMillis(seckillConfig.getLifecycle().getRetentionMinutes());
+    }
+
+    /**
+     * 库存是否已经加载到Redis(以库存元数据为准)
+     * @param voucherId 优惠券ID
+     */
+    public boolean isLoaded(Long voucherId) {
+        return Boolean.TRUE.equals(stringRedisTemplate.hasKey(STOCK_META_KEY + voucherId));
+    }
+
+    /**
+     * 查询Redis中剩余的库存(各个库存桶之和)
+     * @param voucherId 优惠券ID
+     * @return 剩余库存
+     */
+    public long getRemainingStock(Long voucherId) {
+        long remaining = 0;
+        for (String key : stockKeys(voucherId)) {
+            DataType type = stringRedisTemplate.type(key);
+            if (type == DataType.STRING) {
+                String value = stringRedisTemplate.opsForValue().get(key);
+                remaining += value == null ? 0 : Math.max(0, Long.parseLong(value));
+            } else if (type == DataType.LIST) {
+                Long size = stringRedisTemplate.opsForList().size(key);
+                remaining += size == null ? 0 : size;
+            }
+        }
+        return remaining;
+    }
+
+    /**
+     * 归还库存(如取消未支付的订单)，沿用库存元数据中的存储策略，分桶时平均归还到各个桶
+     * 优惠券的库存已经释放或过期时不归还，下次加载库存时以数据库为准
+     * @param voucherId 优惠券ID
+     * @param count 归还的库存数量
+     * @return 是否归还到Redis
+     */
+    public boolean returnStock(Long voucherId, int count) {
+        if (count <= 0) {
+            return false;
+        }
+        Object mode = stringRedisTemplate.opsForHash().get(STOCK_META_KEY + voucherId, META_MODE);
+        if (mode == null) {
+            log.info("优惠券库存未加载，不归还到Redis，优惠券ID: {}，数量: {}", voucherId, count);
+            return false;
+        }
+        StockStrategy strategy = getStrategy(mode.toString());
+        // 库存队列取空后key已被删除，归还后沿用元数据的过期时间
+        Long ttlMillis = stringRedisTemplate.getExpire(STOCK_META_KEY + voucherId, TimeUnit.MILLISECONDS);
+        List<String> keys = stockKeys(voucherId);
+        for (int i = 0; i < keys.size(); i++) {
+            int share = count / keys.size() + (i < count % keys.size() ? 1 : 0);
+            if (share > 0) {
+                strategy.restore(keys.get(i), share);
+                if (ttlMillis != null && ttlMillis > 0) {
+                    stringRedisTemplate.expire(keys.get(i), ttlMillis, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+        // 清除库存为空标记和所有节点的本地售罄标记
+        stringRedisTemplate.delete(STOCK_EMPTY_KEY + voucherId);
+        soldOutRegistry.reset(voucherId);
+        log.info("归还库存，优惠券ID: {}，数量: {}", voucherId, count);
+        return true;
+    }
+
+    /**
+     * 释放优惠券在Redis中的秒杀状态：库存、元数据、售罄标记和用户订单记录
+     * @param voucherId 优惠券ID
+     */
+    public void releaseStock(Long voucherId) {
+        deleteStockKeys(voucherId);
+        layouts.invalidate(voucherId);
+        stringRedisTemplate.delete(STOCK_EMPTY_KEY + voucherId);
+        // 用户订单记录按库存桶和用户ID分片，分片号不连续，扫描删除
+        Set<String> shardKeys = stringRedisTemplate.execute((RedisCallback<Set<String>>) connection -> {
+            Set<String> result = new HashSet<>();
+            ScanOptions options = ScanOptions.scanOptions().match(SECKILL_ORDER_KEY + "{" + voucherId + ":*").count(1000).build();
+            try (Cursor<byte[]> cursor = connection.scan(options)) {
+                cursor.forEachRemaining(key -> result.add(new String(key, StandardCharsets.UTF_8)));
+            }
+            return result;
+        });
+        if (shardKeys != null && !shardKeys.isEmpty()) {
+            stringRedisTemplate.delete(shardKeys);
+        }
+        log.info("释放秒杀库存状态，优惠券ID: {}，用户订单记录分片: {}", voucherId, shardKeys == null ? 0 : shardKeys.size());
+    }
+
+    /**
+     * 优惠券当前的所有库存key(未分桶时只有一个)
+     */
+    private List<String> stockKeys(Long voucherId) {
+        int buckets = getBucketCount(voucherId);
+        List<String> keys = new ArrayList<>(buckets);
+        for (int i = 0; i < buckets; i++) {
+            keys.add(StockLayout.stockKey(voucherId, i));
+        }
+        return keys;
+    }
+
+    /**
+     * 删除库存key(含所有库存桶)和库存元数据
+     */
+    private void deleteStockKeys(Long voucherId) {
+        List<String> keys = new ArrayList<>(stockKeys(voucherId));
+        keys.add(STOCK_META_KEY + voucherId);
+        stringRedisTemplate.delete(keys);
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * 获取库存存储策略
+     */
+    private StockStrategy getStrategy(String mode) {
+        if (StrUtil.isBlank(mode)) {
+            mode = seckillConfig.getStock().getDefaultMode();
+        }
+        StockStrategy strategy = strategies.get(mode);
+        if (strategy == null) {
+            throw new IllegalArgumentException("不支持的库存存储策略: " + mode);
+        }
+        return strategy;
     }
 
     /**
@@ -44,6 +393,7 @@ public class StockInitializer {
      */
     public void setStockEmpty(Long voucherId) {
         stringRedisTemplate.opsForValue().set(STOCK_EMPTY_KEY + voucherId, "1");
+        soldOutRegistry.markSoldOut(voucherId);
         log.info("设置库存为空标记，优惠券ID: {}", voucherId);
     }
 
@@ -55,4 +405,4 @@ public class StockInitializer {
     public boolean isStockEmpty(Long voucherId) {
         return Boolean.TRUE.equals(stringRedisTemplate.hasKey(STOCK_EMPTY_KEY + voucherId));
     }
-} 
\ No newline at end of file
+} 
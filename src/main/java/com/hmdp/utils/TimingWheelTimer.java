@@ -0,0 +1,201 @@
+package com.hmdp.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 分层时间轮定时器
+ * 第一层每格 tickMillis，共 wheelSize 格；超出本层范围的任务放到上一层(每格为下一层的整圈)，按需创建；
+ * 添加任务只需定位格子并挂到链表头，与任务数量无关(O(1))，百万级任务只占用链表节点的内存；
+ * 只有非空的格子进入 DelayQueue，推进时钟时整格取出，到期的任务返回给调用方，未到期的降到下层重新放入
+ *
+ * 添加和推进由同一把锁保护，poll 在锁外等待格子到期
+ * @param <T> 任务内容
+ */
+public class TimingWheelTimer<T> {
+
+    private final DelayQueue<Bucket<T>> delayQueue = new DelayQueue<>();
+    private final TimingWheel<T> wheel;
+    private final AtomicLong size = new AtomicLong();
+
+    /**
+     * @param tickMillis 第一层每格的时间（毫秒）
+     * @param wheelSize 每层的格数
+     */
+    public TimingWheelTimer(long tickMillis, int wheelSize) {
+        this.wheel = new TimingWheel<>(tickMillis, wheelSize, System.currentTimeMillis(), delayQueue);
+    }
+
+    /**
+     * 添加定时任务
+     * @param task 任务内容
+     * @param expireAt 到期时间的毫秒时间戳
+     * @return 是否加入时间轮，已经到期时返回false，由调用方直接处理
+     */
+    public synchronized boolean add(T task, long expireAt) {
+        if (!wheel.add(new Node<>(task, expireAt))) {
+            return false;
+        }
+        size.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * 等待并取出到期的任务
+     * @param timeoutMillis 没有格子到期时最多等待的时间（毫秒）
+     * @return 到期的任务，没有时返回空列表
+     */
+    public List<T> poll(long timeoutMillis) throws InterruptedException {
+        Bucket<T> bucket = delayQueue.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        if (bucket == null) {
+            return Collections.emptyList();
+        }
+        List<T> expired = new ArrayList<>();
+        synchronized (this) {
+            while (bucket != null) {
+                wheel.advanceClock(bucket.getExpiration());
+                Node<T> node = bucket.flush();
+                while (node != null) {
+                    Node<T> next = node.next;
+                    node.next = null;
+                    // 上层格子中的任务降到下层，已经到期的返回
+                    if (!wheel.add(node)) {
+                        expired.add(node.task);
+                        size.decrementAndGet();
+                    }
+                    node = next;
+                }
+                bucket = delayQueue.poll();
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * 时间轮中的任务数量
+     */
+    public long size() {
+        return size.get();
+    }
+
+    /**
+     * 一层时间轮
+     */
+    private static class TimingWheel<T> {
+        private final long tickMillis;
+        private final int wheelSize;
+        private final long interval;
+        private final Bucket<T>[] buckets;
+        private final DelayQueue<Bucket<T>> delayQueue;
+        private long currentTime;
+        private TimingWheel<T> overflowWheel;
+
+        @SuppressWarnings("unchecked")
+        TimingWheel(long tickMillis, int wheelSize, long startMillis, DelayQueue<Bucket<T>> delayQueue) {
+            this.tickMillis = tickMillis;
+            this.wheelSize = wheelSize;
+            this.interval = tickMillis * wheelSize;
+            this.delayQueue = delayQueue;
+            this.currentTime = startMillis - startMillis % tickMillis;
+            this.buckets = new Bucket[wheelSize];
+            for (int i = 0; i < wheelSize; i++) {
+                buckets[i] = new Bucket<>();
+            }
+        }
+
+        boolean add(Node<T> node) {
+            long expireAt = node.expireAt;
+            if (expireAt < currentTime + tickMillis) {
+                // 已经到期
+                return false;
+            }
+            if (expireAt < currentTime + interval) {
+                long virtualId = expireAt / tickMillis;
+                Bucket<T> bucket = buckets[(int) (virtualId % wheelSize)];
+                bucket.add(node);
+                // 格子第一次使用或复用到新一圈时重新进入延迟队列
+                if (bucket.setExpiration(virtualId * tickMillis)) {
+                    delayQueue.offer(bucket);
+                }
+                return true;
+            }
+            if (overflowWheel == null) {
+                overflowWheel = new TimingWheel<>(interval, wheelSize, currentTime, delayQueue);
+            }
+            return overflowWheel.add(node);
+        }
+
+        void advanceClock(long time) {
+            if (time >= currentTime + tickMillis) {
+                currentTime = time - time % tickMillis;
+                if (overflowWheel != null) {
+                    overflowWheel.advanceClock(currentTime);
+                }
+            }
+        }
+    }
+
+    /**
+     * 时间轮的一个格子，任务以单向链表保存
+     */
+    private static class Bucket<T> implements Delayed {
+        private Node<T> head;
+        private volatile long expiration = -1;
+
+        void add(Node<T> node) {
+            node.next = head;
+            head = node;
+        }
+
+        /**
+         * @return 到期时间是否改变
+         */
+        boolean setExpiration(long expiration) {
+            if (this.expiration == expiration) {
+                return false;
+            }
+            this.expiration = expiration;
+            return true;
+        }
+
+        long getExpiration() {
+            return expiration;
+        }
+
+        /**
+         * 取出格子中的所有任务并重置到期时间
+         */
+        Node<T> flush() {
+            Node<T> nodes = head;
+            head = null;
+            expiration = -1;
+            return nodes;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(Math.max(expiration - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(expiration, ((Bucket<?>) other).expiration);
+        }
+    }
+
+    private static class Node<T> {
+        private final T task;
+        private final long expireAt;
+        private Node<T> next;
+
+        Node(T task, long expireAt) {
+            this.task = task;
+            this.expireAt = expireAt;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.SeckillConfig;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.IVoucherOrderService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_UNPAID_KEY;
+import static com.hmdp.utils.RedisConstants.VOUCHER_ORDER_CACHE_KEY;
+
+/**
+ * 未支付订单超时取消
+ * 订单创建成功后登记到期时间：Redis ZSET(seckill:unpaid，score为到期时间)负责持久化，
+ * 本节点的分层时间轮负责准时触发，不需要轮询Redis；到期后先用Lua脚本把订单的score推迟到租约结束时间来认领
+ * (只有一个节点能认领成功)，再批量取消仍未支付的订单，归还数据库库存，
+ * 事务提交后才从ZSET中删除订单，并把库存归还到Redis的库存队列
+ *
+ * 节点重启或宕机后时间轮中的任务丢失，由各节点的补偿扫描接管：
+ * 定期从ZSET中取出超过到期时间一段时间仍未认领的订单，按同样的流程取消；
+ * 认领后、提交前宕机的订单留在ZSET中，租约过期后同样会被补偿扫描重新认领
+ */
+@Slf4j
+@Component
+public class UnpaidOrderCanceller implements ApplicationRunner, DisposableBean {
+
+    private static final DefaultRedisScript<List<String>> CLAIM_SCRIPT = RedisScripts.listScript("unpaid_claim.lua");
+
+    /**
+     * 延迟注入，避免与订单服务形成循环依赖
+     */
+    @Resource
+    @Lazy
+    private IVoucherOrderService voucherOrderService;
+
+    @Resource
+    private StockInitializer stockInitializer;
+
+    @Resource
+    private CacheClient cacheClient;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final SeckillConfig.UnpaidCancel config;
+    private final TimingWheelTimer<Long> timer;
+    private final Counter cancelledCounter;
+
+    private ScheduledExecutorService sweepExecutor;
+    private Thread timerThread;
+    private volatile boolean running;
+
+    public UnpaidOrderCanceller(StringRedisTemplate stringRedisTemplate, SeckillConfig seckillConfig,
+                                MeterRegistry meterRegistry) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.config = seckillConfig.getUnpaidCancel();
+        this.timer = new TimingWheelTimer<>(config.getTickMillis(), config.getWheelSize());
+        this.cancelledCounter = Counter.builder("seckill.unpaid.cancelled")
+                .description("超时取消的未支付订单数")
+                .register(meterRegistry);
+        meterRegistry.gauge("seckill.unpaid.timers", timer, TimingWheelTimer::size);
+    }
+
+    /**
+     * 是否启用未支付订单超时取消
+     */
+    public boolean isEnabled() {
+        return config.isEnabled();
+    }
+
+    /**
+     * 登记新创建的订单，事务提交后写入ZSET和时间轮(事务回滚时不登记)
+     * @param voucherOrders 创建成功的订单
+     */
+    public void scheduleAfterCommit(List<VoucherOrder> voucherOrders) {
+        if (!config.isEnabled() || voucherOrders.isEmpty()) {
+            return;
+        }
+        List<Long> orderIds = voucherOrders.stream().map(VoucherOrder::getId).collect(Collectors.toList());
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    schedule(orderIds);
+                }
+            });
+        } else {
+            schedule(orderIds);
+        }
+    }
+
+    private void schedule(List<Long> orderIds) {
+        long expireAt = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(config.getTimeoutMinutes());
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (Long orderId : orderIds) {
+                    conn.zAdd(SECKILL_UNPAID_KEY, expireAt, orderId.toString());
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            // 订单已经提交，登记失败只影响超时取消，不影响下单
+            log.error("登记未支付订单失败，订单数: {}", orderIds.size(), e);
+            return;
+        }
+        for (Long orderId : orderIds) {
+            timer.add(orderId, expireAt);
+        }
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!config.isEnabled()) {
+            return;
+        }
+        running = true;
+        timerThread = new Thread(this::pollLoop, "unpaid-order-timer");
+        timerThread.setDaemon(true);
+        timerThread.start();
+
+        sweepExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "unpaid-order-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweepExecutor.scheduleWithFixedDelay(this::sweepQuietly,
+                config.getSweepIntervalMillis(), config.getSweepIntervalMillis(), TimeUnit.MILLISECONDS);
+        log.info("未支付订单超时取消已启动，超时时间: {}分钟，时间轮: {}ms x {}",
+                config.getTimeoutMinutes(), config.getTickMillis(), config.getWheelSize());
+    }
+
+    /**
+     * 时间轮线程：取出到期的订单，按批认领并取消
+     */
+    private void pollLoop() {
+        while (running) {
+            try {
+                List<Long> expired = timer.poll(config.getTickMillis() * 10);
+                for (int from = 0; from < expired.size(); from += config.getBatchSize()) {
+                    cancel(expired.subList(from, Math.min(from + config.getBatchSize(), expired.size())));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("处理到期的未支付订单失败", e);
+            }
+        }
+    }
+
+    private void sweepQuietly() {
+        try {
+            sweep();
+        } catch (Exception e) {
+            log.error("补偿扫描未支付订单失败", e);
+        }
+    }
+
+    /**
+     * 补偿扫描：接管其他节点(或本节点重启前)登记、到期后一直没有被认领的订单
+     */
+    private void sweep() {
+        long deadline = System.currentTimeMillis() - config.getSweepGraceMillis();
+        while (running) {
+            Set<String> members = stringRedisTemplate.opsForZSet()
+                    .rangeByScore(SECKILL_UNPAID_KEY, 0, deadline, 0, config.getBatchSize());
+            if (members == null || members.isEmpty()) {
+                return;
+            }
+            List<Long> orderIds = members.stream().map(Long::valueOf).collect(Collectors.toList());
+            int cancelled = cancel(orderIds);
+            log.info("补偿扫描未支付订单，数量: {}，取消: {}", orderIds.size(), cancelled);
+            if (members.size() < config.getBatchSize()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 认领并取消一批到期的订单
+     * @return 本次取消的订单数量
+     */
+    private int cancel(List<Long> orderIds) {
+        List<Long> claimed = claim(orderIds);
+        if (claimed.isEmpty()) {
+            return 0;
+        }
+        List<VoucherOrder> cancelled;
+        try {
+            cancelled = voucherOrderService.cancelUnpaidOrders(claimed);
+        } catch (RuntimeException e) {
+            // 提前结束租约，由补偿扫描重试
+            zAdd(claimed, System.currentTimeMillis());
+            throw e;
+        }
+        // 事务已经提交，认领的订单(包括已经支付的)都从ZSET中删除
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (Long orderId : claimed) {
+                    conn.zRem(SECKILL_UNPAID_KEY, orderId.toString());
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            // 租约过期后会被重新认领，已取消的订单不会再次取消，不影响下面归还库存
+            log.error("删除已处理的未支付订单失败，订单数: {}", claimed.size(), e);
+        }
+        if (cancelled.isEmpty()) {
+            return 0;
+        }
+
+        // 数据库已经提交，按优惠券把库存归还到Redis
+        Map<Long, Long> counts = cancelled.stream()
+                .collect(Collectors.groupingBy(VoucherOrder::getVoucherId, Collectors.counting()));
+        counts.forEach((voucherId, count) -> stockInitializer.returnStock(voucherId, count.intValue()));
+        for (VoucherOrder voucherOrder : cancelled) {
+            cacheClient.deleteCache(VOUCHER_ORDER_CACHE_KEY + "user:" + voucherOrder.getUserId()
+                    + ":voucher:" + voucherOrder.getVoucherId());
+        }
+        cancelledCounter.increment(cancelled.size());
+        log.info("取消未支付订单，认领: {}，取消: {}，优惠券: {}", claimed.size(), cancelled.size(), counts);
+        return cancelled.size();
+    }
+
+    /**
+     * 把到期订单的score推迟到租约结束时间，推迟成功的订单归本节点处理
+     */
+    private List<Long> claim(List<Long> orderIds) {
+        long now = System.currentTimeMillis();
+        List<String> args = new ArrayList<>(orderIds.size() + 2);
+        // 时间轮最多可能提前一格触发
+        args.add(String.valueOf(now + config.getTickMillis()));
+        args.add(String.valueOf(now + config.getClaimLeaseMillis()));
+        orderIds.forEach(orderId -> args.add(orderId.toString()));
+        List<String> claimed = stringRedisTemplate.execute(CLAIM_SCRIPT,
+                Collections.singletonList(SECKILL_UNPAID_KEY), args.toArray());
+        if (claimed == null || claimed.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return claimed.stream().map(Long::valueOf).collect(Collectors.toList());
+    }
+
+    /**
+     * 只更新仍在ZSET中的订单的score
+     */
+    private void zAdd(List<Long> orderIds, long score) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (Long orderId : orderIds) {
+                conn.zAdd(SECKILL_UNPAID_KEY, score, orderId.toString(), RedisZSetCommands.ZAddArgs.empty().ifExists());
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void destroy() {
+        running = false;
+        if (timerThread != null) {
+            timerThread.interrupt();
+        }
+        if (sweepExecutor != null) {
+            sweepExecutor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.DataSourceContextHolder;
+import com.hmdp.config.DataSourceType;
+import com.hmdp.config.SeckillConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * 订单分表路由
+ * 订单按用户ID取模分到 tb_voucher_order_{分表号}，分表号同时写入订单ID的低位；
+ * 访问订单表前用 onShard 在当前线程上指定分表，SQL中的逻辑表名由MyBatis-Plus动态表名插件替换为分表名，
+ * 数据源仍由 DynamicRoutingDataSource 按读写选择主库或从库(各库的分表结构相同)；
+ * 未指定分表就访问订单表时直接报错，避免数据写入逻辑表
+ */
+@Slf4j
+@Component
+public class VoucherOrderSharding implements DisposableBean {
+
+    /**
+     * 订单逻辑表名
+     */
+    public static final String LOGIC_TABLE = "tb_voucher_order";
+
+    private static final ThreadLocal<Integer> CURRENT_SHARD = new ThreadLocal<>();
+
+    private final SeckillConfig.Sharding config;
+    private final RedisIdWorker redisIdWorker;
+    private final ExecutorService scatterExecutor;
+
+    public VoucherOrderSharding(SeckillConfig seckillConfig, RedisIdWorker redisIdWorker) {
+        this.config = seckillConfig.getOrder().getSharding();
+        this.redisIdWorker = redisIdWorker;
+        if (config.isEnabled() && (config.getTableCount() < 1 || config.getTableCount() > 1 << RedisIdWorker.SHARD_BITS)) {
+            throw new IllegalStateException("订单分表数量必须在1到" + (1 << RedisIdWorker.SHARD_BITS) + "之间");
+        }
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.scatterExecutor = Executors.newFixedThreadPool(Math.max(1, config.getScatterThreads()), r -> {
+            Thread thread = new Thread(r, "order-shard-scatter-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 是否启用分表
+     */
+    public boolean isEnabled() {
+        return config.isEnabled();
+    }
+
+    /**
+     * 分表数量，未启用分表时为1
+     */
+    public int getShardCount() {
+        return config.isEnabled() ? config.getTableCount() : 1;
+    }
+
+    /**
+     * 用户所在的分表
+     */
+    public int shardOfUser(Long userId) {
+        return config.isEnabled() ? (int) (userId % config.getTableCount()) : 0;
+    }
+
+    /**
+     * 订单所在的分表(从订单ID的低位取出)
+     */
+    public int shardOfOrder(Long orderId) {
+        return config.isEnabled() ? RedisIdWorker.shardOf(orderId) % config.getTableCount() : 0;
+    }
+
+    /**
+     * 生成订单ID，启用分表时在低位写入用户所在的分表号
+     */
+    public long nextOrderId(Long userId) {
+        return config.isEnabled() ? redisIdWorker.nextId("order", shardOfUser(userId)) : redisIdWorker.nextId("order");
+    }
+
+    /**
+     * 在指定分表上执行，结束后恢复之前的分表(支持嵌套)
+     */
+    public <T> T onShard(int shard, Supplier<T> action) {
+        if (!config.isEnabled()) {
+            return action.get();
+        }
+        Integer previous = CURRENT_SHARD.get();
+        CURRENT_SHARD.set(shard);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                CURRENT_SHARD.remove();
+            } else {
+                CURRENT_SHARD.set(previous);
+            }
+        }
+    }
+
+    public void onShard(int shard, Runnable action) {
+        onShard(shard, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * 在用户所在的分表上执行
+     */
+    public <T> T onUserShard(Long userId, Supplier<T> action) {
+        return onShard(shardOfUser(userId), action);
+    }
+
+    public void onUserShard(Long userId, Runnable action) {
+        onShard(shardOfUser(userId), action);
+    }
+
+    /**
+     * 按用户所在的分表分组
+     */
+    public <T> Map<Integer, List<T>> groupByShard(Collection<T> items, Function<T, Long> userIdGetter) {
+        Map<Integer, List<T>> groups = new LinkedHashMap<>();
+        for (T item : items) {
+            groups.computeIfAbsent(shardOfUser(userIdGetter.apply(item)), k -> new ArrayList<>()).add(item);
+        }
+        return groups;
+    }
+
+    /**
+     * 跨分表查询：在每个分表上并行执行查询，按分表号顺序合并结果
+     * 查询线程沿用调用线程的数据源(主库或从库)
+     */
+    public <T> List<T> scatter(IntFunction<List<T>> query) {
+        int count = getShardCount();
+        if (count == 1) {
+            return onShard(0, () -> query.apply(0));
+        }
+        DataSourceType dataSourceType = DataSourceContextHolder.getDataSourceType();
+        List<CompletableFuture<List<T>>> futures = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int shard = i;
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                DataSourceContextHolder.setDataSourceType(dataSourceType);
+                try {
+                    return onShard(shard, () -> query.apply(shard));
+                } finally {
+                    DataSourceContextHolder.clearDataSourceType();
+                }
+            }, scatterExecutor));
+        }
+        List<T> results = new ArrayList<>();
+        for (CompletableFuture<List<T>> future : futures) {
+            results.addAll(future.join());
+        }
+        return results;
+    }
+
+    /**
+     * 动态表名：访问订单逻辑表时替换为当前线程指定的分表
+     * @param tableName SQL中的表名
+     * @return 实际表名
+     */
+    public String resolveTableName(String tableName) {
+        if (!config.isEnabled() || !LOGIC_TABLE.equalsIgnoreCase(tableName)) {
+            return tableName;
+        }
+        Integer shard = CURRENT_SHARD.get();
+        if (shard == null) {
+            throw new IllegalStateException("访问订单表前未指定分表");
+        }
+        return LOGIC_TABLE + "_" + shard;
+    }
+
+    @Override
+    public void destroy() {
+        scatterExecutor.shutdown();
+    }
+}
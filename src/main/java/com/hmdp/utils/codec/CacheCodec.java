@@ -0,0 +1,40 @@
+package com.hmdp.utils.codec;
+
+import com.hmdp.utils.RedisData;
+
+/**
+ * 缓存值编解码器
+ * 每个类型一个实例，由 CacheCodecFactory 创建后在 CacheCodecs 中缓存复用，
+ * 编解码时不再按类型反射查找属性
+ * @param <T> 缓存值类型
+ */
+public interface CacheCodec<T> {
+
+    /**
+     * 编码缓存值
+     * @param value 缓存值
+     * @return 写入Redis的字节
+     */
+    byte[] encode(T value);
+
+    /**
+     * 解码缓存值
+     * @param data Redis中的字节
+     * @return 缓存值
+     */
+    T decode(byte[] data);
+
+    /**
+     * 编码逻辑过期的缓存值(RedisData包装)
+     * @param redisData 逻辑过期时间和缓存值
+     * @return 写入Redis的字节
+     */
+    byte[] encodeLogical(RedisData redisData);
+
+    /**
+     * 解码逻辑过期的缓存值，一次解析得到逻辑过期时间和 T 类型的缓存值
+     * @param data Redis中的字节
+     * @return data 为 T 类型的 RedisData
+     */
+    RedisData decodeLogical(byte[] data);
+}
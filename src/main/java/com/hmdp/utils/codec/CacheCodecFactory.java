@@ -0,0 +1,21 @@
+package com.hmdp.utils.codec;
+
+/**
+ * 缓存值编解码器工厂(编解码方式的扩展点)
+ * 新的编解码方式实现该接口并注册为Spring Bean，通过 cache.codec 按名称选用
+ */
+public interface CacheCodecFactory {
+
+    /**
+     * 获取编解码方式名称
+     * @return 名称
+     */
+    String getName();
+
+    /**
+     * 为指定类型创建编解码器
+     * @param type 缓存值类型
+     * @return 编解码器
+     */
+    <T> CacheCodec<T> create(Class<T> type);
+}
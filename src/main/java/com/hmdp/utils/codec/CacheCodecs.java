@@ -0,0 +1,133 @@
+package com.hmdp.utils.codec;
+
+import com.hmdp.config.CacheConfig;
+import com.hmdp.utils.RedisData;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 缓存值编解码器注册表
+ * 按类型选用编解码方式(cache.codec.types 中按类名指定，未指定时使用 cache.codec.default-codec)，
+ * 每个类型的编解码器只创建一次
+ *
+ * 使用非hutool的编解码方式时，解码失败会再按hutool格式解码一次：
+ * 切换前由 JSONUtil 写入的缓存(如LocalDateTime存为毫秒时间戳的店铺逻辑过期缓存)在重新写入前仍然可以读取
+ */
+@Slf4j
+@Component
+public class CacheCodecs {
+
+    private final Map<String, CacheCodecFactory> factories;
+    private final CacheConfig.Codec config;
+    private final Map<Class<?>, CacheCodec<?>> codecs = new ConcurrentHashMap<>();
+
+    public CacheCodecs(List<CacheCodecFactory> factories, CacheConfig cacheConfig) {
+        this.factories = factories.stream()
+                .collect(Collectors.toMap(CacheCodecFactory::getName, Function.identity()));
+        this.config = cacheConfig.getCodec();
+        if (!this.factories.containsKey(config.getDefaultCodec())) {
+            throw new IllegalArgumentException("不支持的缓存编解码方式: " + config.getDefaultCodec());
+        }
+    }
+
+    /**
+     * 获取类型的编解码器
+     * @param type 缓存值类型
+     * @return 编解码器
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CacheCodec<T> codecFor(Class<T> type) {
+        CacheCodec<?> codec = codecs.get(type);
+        if (codec == null) {
+            codec = codecs.computeIfAbsent(type, this::create);
+        }
+        return (CacheCodec<T>) codec;
+    }
+
+    /**
+     * 按缓存值的实际类型编码
+     */
+    @SuppressWarnings("unchecked")
+    public byte[] encode(Object value) {
+        return ((CacheCodec<Object>) codecFor(value.getClass())).encode(value);
+    }
+
+    /**
+     * 按缓存值的实际类型编码逻辑过期包装
+     */
+    public byte[] encodeLogical(RedisData redisData) {
+        Object data = redisData.getData();
+        return codecFor(data == null ? Object.class : data.getClass()).encodeLogical(redisData);
+    }
+
+    private CacheCodec<?> create(Class<?> type) {
+        String name = config.getTypes().getOrDefault(type.getName(), config.getDefaultCodec());
+        CacheCodecFactory factory = factories.get(name);
+        if (factory == null) {
+            throw new IllegalArgumentException("不支持的缓存编解码方式: " + name + "，类型: " + type.getName());
+        }
+        log.debug("创建缓存编解码器，类型: {}，编解码方式: {}", type.getName(), name);
+        CacheCodecFactory legacy = factories.get(HutoolCacheCodecFactory.NAME);
+        if (legacy == null || legacy == factory) {
+            return factory.create(type);
+        }
+        return new LegacyFallbackCodec<>(factory.create(type), legacy.create(type));
+    }
+
+    /**
+     * 按配置的方式编码，解码失败时再按hutool格式解码
+     */
+    private static class LegacyFallbackCodec<T> implements CacheCodec<T> {
+        private final CacheCodec<T> codec;
+        private final CacheCodec<T> legacy;
+
+        LegacyFallbackCodec(CacheCodec<T> codec, CacheCodec<T> legacy) {
+            this.codec = codec;
+            this.legacy = legacy;
+        }
+
+        @Override
+        public byte[] encode(T value) {
+            return codec.encode(value);
+        }
+
+        @Override
+        public T decode(byte[] data) {
+            try {
+                return codec.decode(data);
+            } catch (RuntimeException e) {
+                try {
+                    return legacy.decode(data);
+                } catch (RuntimeException legacyError) {
+                    e.addSuppressed(legacyError);
+                    throw e;
+                }
+            }
+        }
+
+        @Override
+        public byte[] encodeLogical(RedisData redisData) {
+            return codec.encodeLogical(redisData);
+        }
+
+        @Override
+        public RedisData decodeLogical(byte[] data) {
+            try {
+                return codec.decodeLogical(data);
+            } catch (RuntimeException e) {
+                try {
+                    return legacy.decodeLogical(data);
+                } catch (RuntimeException legacyError) {
+                    e.addSuppressed(legacyError);
+                    throw e;
+                }
+            }
+        }
+    }
+}
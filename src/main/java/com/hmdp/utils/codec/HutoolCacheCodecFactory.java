@@ -0,0 +1,51 @@
+package com.hmdp.utils.codec;
+
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.utils.RedisData;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Hutool JSON编解码
+ * 与之前直接调用 JSONUtil 的格式一致，逻辑过期的缓存值先解析为 JSONObject 再复制为目标类型
+ */
+@Component
+public class HutoolCacheCodecFactory implements CacheCodecFactory {
+
+    public static final String NAME = "hutool";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public <T> CacheCodec<T> create(Class<T> type) {
+        return new CacheCodec<T>() {
+            @Override
+            public byte[] encode(T value) {
+                return JSONUtil.toJsonStr(value).getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public T decode(byte[] data) {
+                return JSONUtil.toBean(new String(data, StandardCharsets.UTF_8), type);
+            }
+
+            @Override
+            public byte[] encodeLogical(RedisData redisData) {
+                return JSONUtil.toJsonStr(redisData).getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public RedisData decodeLogical(byte[] data) {
+                RedisData redisData = JSONUtil.toBean(new String(data, StandardCharsets.UTF_8), RedisData.class);
+                redisData.setData(BeanUtil.toBean((JSONObject) redisData.getData(), type));
+                return redisData;
+            }
+        };
+    }
+}
@@ -0,0 +1,118 @@
+package com.hmdp.utils.codec;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.hmdp.utils.RedisData;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Jackson JSON编解码
+ * 每个类型预先构建 ObjectReader/ObjectWriter(包括逻辑过期包装的 LogicalEnvelope<T>)，
+ * 编解码时直接复用，逻辑过期的缓存值一次解析完成
+ */
+@Component
+public class JacksonCacheCodecFactory implements CacheCodecFactory {
+
+    public static final String NAME = "json";
+
+    private final String name;
+    private final ObjectMapper objectMapper;
+
+    public JacksonCacheCodecFactory() {
+        this(NAME, new JsonFactory());
+    }
+
+    /**
+     * @param name 编解码方式名称
+     * @param jsonFactory Jackson的数据格式(JSON、Smile等)
+     */
+    protected JacksonCacheCodecFactory(String name, JsonFactory jsonFactory) {
+        this.name = name;
+        this.objectMapper = new ObjectMapper(jsonFactory)
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .disable(SerializationFeature.FAIL_ON_EMPTY_BEANS)
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public <T> CacheCodec<T> create(Class<T> type) {
+        JavaType envelopeType = objectMapper.getTypeFactory().constructParametricType(LogicalEnvelope.class, type);
+        return new JacksonCacheCodec<>(
+                objectMapper.readerFor(type), objectMapper.writerFor(type),
+                objectMapper.readerFor(envelopeType), objectMapper.writerFor(envelopeType));
+    }
+
+    private static class JacksonCacheCodec<T> implements CacheCodec<T> {
+        private final ObjectReader reader;
+        private final ObjectWriter writer;
+        private final ObjectReader envelopeReader;
+        private final ObjectWriter envelopeWriter;
+
+        JacksonCacheCodec(ObjectReader reader, ObjectWriter writer,
+                          ObjectReader envelopeReader, ObjectWriter envelopeWriter) {
+            this.reader = reader;
+            this.writer = writer;
+            this.envelopeReader = envelopeReader;
+            this.envelopeWriter = envelopeWriter;
+        }
+
+        @Override
+        public byte[] encode(T value) {
+            try {
+                return writer.writeValueAsBytes(value);
+            } catch (IOException e) {
+                throw new IllegalStateException("缓存值编码失败", e);
+            }
+        }
+
+        @Override
+        public T decode(byte[] data) {
+            try {
+                return reader.readValue(data);
+            } catch (IOException e) {
+                throw new IllegalStateException("缓存值解码失败", e);
+            }
+        }
+
+        @Override
+        public byte[] encodeLogical(RedisData redisData) {
+            LogicalEnvelope<Object> envelope = new LogicalEnvelope<>();
+            envelope.setExpireTime(redisData.getExpireTime());
+            envelope.setData(redisData.getData());
+            try {
+                return envelopeWriter.writeValueAsBytes(envelope);
+            } catch (IOException e) {
+                throw new IllegalStateException("缓存值编码失败", e);
+            }
+        }
+
+        @Override
+        public RedisData decodeLogical(byte[] data) {
+            try {
+                LogicalEnvelope<T> envelope = envelopeReader.readValue(data);
+                RedisData redisData = new RedisData();
+                redisData.setExpireTime(envelope.getExpireTime());
+                redisData.setData(envelope.getData());
+                return redisData;
+            } catch (IOException e) {
+                throw new IllegalStateException("缓存值解码失败", e);
+            }
+        }
+    }
+}
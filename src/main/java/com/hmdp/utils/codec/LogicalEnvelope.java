@@ -0,0 +1,15 @@
+package com.hmdp.utils.codec;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 逻辑过期缓存值的类型化包装，属性与 RedisData 相同，
+ * 解码时按 LogicalEnvelope<T> 一次解析出缓存值，不再经过中间的 JSONObject
+ */
+@Data
+public class LogicalEnvelope<T> {
+    private LocalDateTime expireTime;
+    private T data;
+}
@@ -0,0 +1,19 @@
+package com.hmdp.utils.codec;
+
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Smile二进制编解码
+ * 与Jackson JSON使用同一套预构建的读写器，数据为紧凑的二进制格式(属性名共享、数字二进制存储)，
+ * 占用的内存和网络流量更小，但Redis中的值不再可读
+ */
+@Component
+public class SmileCacheCodecFactory extends JacksonCacheCodecFactory {
+
+    public static final String NAME = "smile";
+
+    public SmileCacheCodecFactory() {
+        super(NAME, new SmileFactory());
+    }
+}
@@ -0,0 +1,37 @@
+package com.hmdp.utils.stock;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * 计数器库存策略
+ * 库存只占用一个字符串key，秒杀时在脚本中判断并DECR，
+ * 扣减与写入用户下单记录(预占记录)在同一个脚本中原子完成，内存占用与库存数量无关
+ */
+@Component
+public class CounterStockStrategy implements StockStrategy {
+
+    public static final String NAME = "counter";
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    public CounterStockStrategy(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void load(String stockKey, int stock) {
+        // SET会覆盖之前的库存(包括List类型的旧库存队列)
+        stringRedisTemplate.opsForValue().set(stockKey, String.valueOf(stock));
+    }
+
+    @Override
+    public void restore(String stockKey, int count) {
+        stringRedisTemplate.opsForValue().increment(stockKey, count);
+    }
+}
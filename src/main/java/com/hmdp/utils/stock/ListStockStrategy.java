@@ -0,0 +1,67 @@
+package com.hmdp.utils.stock;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+
+/**
+ * 库存队列策略
+ * 每个库存对应List中的一个元素，秒杀时LPOP；
+ * 写入时按批次RPUSH并通过pipeline一次发送，避免每个库存一次网络往返
+ */
+@Slf4j
+@Component
+public class ListStockStrategy implements StockStrategy {
+
+    public static final String NAME = "list";
+
+    /**
+     * 单条RPUSH命令携带的元素数量
+     */
+    private static final int PUSH_BATCH_SIZE = 1000;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    public ListStockStrategy(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void load(String stockKey, int stock) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            // 清除之前的库存队列(如果存在)
+            conn.del(stockKey);
+            push(conn, stockKey, stock);
+            return null;
+        });
+    }
+
+    @Override
+    public void restore(String stockKey, int count) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            push((StringRedisConnection) connection, stockKey, count);
+            return null;
+        });
+    }
+
+    /**
+     * 按批次追加库存元素
+     */
+    private static void push(StringRedisConnection conn, String stockKey, int count) {
+        for (int pushed = 0; pushed < count; pushed += PUSH_BATCH_SIZE) {
+            String[] values = new String[Math.min(PUSH_BATCH_SIZE, count - pushed)];
+            Arrays.fill(values, "1");
+            conn.rPush(stockKey, values);
+        }
+    }
+}
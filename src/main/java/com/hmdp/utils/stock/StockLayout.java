@@ -0,0 +1,87 @@
+package com.hmdp.utils.stock;
+
+import com.hmdp.utils.SeckillOrderRecordWriter;
+import lombok.Getter;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_QUEUE_KEY;
+
+/**
+ * 优惠券库存在Redis中的布局
+ * 库存拆分到 buckets 个库存桶，用户按 userId % buckets 归属一个桶；用户订单记录(去重位图)也按桶存放，
+ * 同一个桶的库存key和订单记录key使用相同的hash tag {voucherId:桶号}，在Redis Cluster中位于同一个slot，
+ * 秒杀脚本只访问一个桶，不同的桶可以分布到不同的分片
+ *
+ * 布局由库存元数据 seckill:meta:{voucherId} 加载，应用节点在本地短暂缓存，秒杀请求不再读取元数据
+ */
+@Getter
+public class StockLayout {
+
+    private final Long voucherId;
+    private final String mode;
+    private final int buckets;
+    /**
+     * 秒杀开始和结束时间(毫秒时间戳)，0表示不限制
+     */
+    private final long beginMillis;
+    private final long endMillis;
+    /**
+     * 库存和用户订单记录的过期时间(毫秒时间戳)，0表示不过期
+     */
+    private final long expireAtMillis;
+
+    public StockLayout(Long voucherId, String mode, int buckets, long beginMillis, long endMillis, long expireAtMillis) {
+        this.voucherId = voucherId;
+        this.mode = mode;
+        this.buckets = Math.max(buckets, 1);
+        this.beginMillis = beginMillis;
+        this.endMillis = endMillis;
+        this.expireAtMillis = expireAtMillis;
+    }
+
+    /**
+     * 用户所在的库存桶
+     */
+    public int homeBucket(Long userId) {
+        return (int) (userId % buckets);
+    }
+
+    /**
+     * 库存桶key
+     */
+    public String stockKey(int bucket) {
+        return stockKey(voucherId, bucket);
+    }
+
+    /**
+     * 用户订单记录的分片key，位于用户所在的库存桶
+     */
+    public String orderShardKey(Long userId) {
+        return orderKeyPrefix(voucherId, homeBucket(userId)) + (userId / buckets) / SeckillOrderRecordWriter.SHARD_SIZE;
+    }
+
+    /**
+     * 用户在订单记录分片中的位偏移
+     */
+    public long orderOffset(Long userId) {
+        return (userId / buckets) % SeckillOrderRecordWriter.SHARD_SIZE;
+    }
+
+    /**
+     * 库存桶key：seckill:queue:{voucherId:桶号}
+     */
+    public static String stockKey(Long voucherId, int bucket) {
+        return SECKILL_QUEUE_KEY + hashTag(voucherId, bucket);
+    }
+
+    /**
+     * 库存桶内用户订单记录key的前缀：seckill:order:{voucherId:桶号}:，后接分片号
+     */
+    public static String orderKeyPrefix(Long voucherId, int bucket) {
+        return SECKILL_ORDER_KEY + hashTag(voucherId, bucket) + ":";
+    }
+
+    private static String hashTag(Long voucherId, int bucket) {
+        return "{" + voucherId + ":" + bucket + "}";
+    }
+}
@@ -0,0 +1,29 @@
+package com.hmdp.utils.stock;
+
+/**
+ * 秒杀库存存储策略接口
+ * 定义库存在Redis中的存储形式，admission脚本(queue_seckill.lua)根据key的类型自动识别
+ * 分桶库存时每个库存桶分别按该策略写入
+ */
+public interface StockStrategy {
+
+    /**
+     * 获取策略名称
+     * @return 策略名称
+     */
+    String getName();
+
+    /**
+     * 将库存写入Redis(覆盖原有库存)
+     * @param stockKey 库存key
+     * @param stock 库存数量
+     */
+    void load(String stockKey, int stock);
+
+    /**
+     * 归还库存(在原有库存上增加)
+     * @param stockKey 库存key
+     * @param count 归还的库存数量
+     */
+    void restore(String stockKey, int count);
+}
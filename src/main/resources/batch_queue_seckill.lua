@@ -0,0 +1,99 @@
+-- 批量秒杀脚本：一次处理同一优惠券、同一库存桶的多个秒杀请求，逐个返回结果
+-- 所有key使用相同的hash tag {voucherId:桶号}，在Redis Cluster中位于同一个slot
+-- KEYS[1]为库存桶key，之后为本批用到的用户订单记录分片key，启用Redis Stream时最后一个为订单Stream key
+local stockKey = KEYS[1]
+-- 优惠券ID
+local voucherId = ARGV[1]
+-- 秒杀时间窗口(毫秒时间戳，0表示不限制)
+local beginTime = tonumber(ARGV[2])
+local endTime = tonumber(ARGV[3])
+-- 用户订单记录的过期时间(毫秒时间戳，0表示不过期)
+local expireAt = tonumber(ARGV[4])
+-- 订单Stream key(可选)
+local streamKey
+if ARGV[5] == '1' then
+    streamKey = KEYS[#KEYS]
+end
+-- ARGV[6]开始每个请求依次为 用户ID、订单ID、订单记录分片key在KEYS中的下标、位偏移
+
+-- 0. 以Redis服务器时间判断秒杀时间窗口，各个应用节点的时钟偏差不影响开始和结束
+if beginTime > 0 or endTime > 0 then
+    local time = redis.call('time')
+    local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+    local code
+    if beginTime > 0 and now < beginTime then
+        code = 3
+    elseif endTime > 0 and now >= endTime then
+        code = 4
+    end
+    if code then
+        -- 整批请求都在时间窗口之外
+        local rejected = {}
+        for i = 6, #ARGV, 4 do
+            rejected[#rejected + 1] = code
+        end
+        return rejected
+    end
+end
+
+-- 本批写入过的分片
+local touchedShards = {}
+-- 本桶的库存是否已经扣完，扣完后剩余请求不再访问库存key
+local soldOut = false
+
+-- 从库存桶中扣减一个库存，根据key的类型识别库存存储策略
+local function takeOne()
+    if (redis.call('type', stockKey).ok == 'string') then
+        -- 计数器策略：库存大于0时扣减
+        local stock = tonumber(redis.call('get', stockKey))
+        if (stock ~= nil and stock > 0) then
+            redis.call('decr', stockKey)
+            return true
+        end
+    elseif redis.call('lpop', stockKey) then
+        -- 库存队列策略：从库存队列中取出一个库存
+        return true
+    end
+    return false
+end
+
+-- 每个请求的结果 0：成功；1：本桶库存不足；2：重复下单；3：尚未开始；4：已经结束
+local results = {}
+
+for i = 6, #ARGV, 4 do
+    local userId = ARGV[i]
+    local shardKey = KEYS[tonumber(ARGV[i + 2])]
+    local offset = tonumber(ARGV[i + 3])
+    local code = 0
+
+    -- 1. 判断用户是否重复下单(同一批内重复的请求也会在这里被拦截)
+    if (redis.call('getbit', shardKey, offset) == 1) then
+        code = 2
+    elseif soldOut then
+        code = 1
+    elseif not takeOne() then
+        -- 2. 本桶的库存已经扣完
+        soldOut = true
+        code = 1
+    end
+
+    if code == 0 then
+        -- 3. 添加用户订单记录
+        redis.call('setbit', shardKey, offset, 1)
+        touchedShards[shardKey] = true
+        -- 使用Redis Stream传输订单时原子写入订单消息
+        if streamKey then
+            redis.call('xadd', streamKey, '*', 'userId', userId, 'voucherId', voucherId, 'id', ARGV[i + 1])
+        end
+    end
+    results[#results + 1] = code
+end
+
+-- 位图分片与库存一起在优惠券结束后过期
+if expireAt > 0 then
+    for shardKey, _ in pairs(touchedShards) do
+        redis.call('pexpireat', shardKey, expireAt)
+    end
+end
+
+return results
@@ -0,0 +1,10 @@
+-- 释放缓存重建租约：只有持有租约的节点可以释放(租约过期后可能已经被其他节点获取)
+-- 租约key
+local leaseKey = KEYS[1]
+-- 租约令牌
+local token = ARGV[1]
+
+if redis.call('get', leaseKey) == token then
+    return redis.call('del', leaseKey)
+end
+return 0
@@ -1,38 +1,72 @@
--- 库存队列key
-local queueKey = KEYS[1]
--- 用户订单记录key
-local orderKey = KEYS[2]
+-- 秒杀资格脚本：在用户所在的库存桶上判断重复下单、扣减库存并记录用户订单
+-- 库存桶key和用户订单记录key使用相同的hash tag {voucherId:桶号}，在Redis Cluster中位于同一个slot
+-- 库存桶key，reserved模式下不扣减(库存已经从其他桶借出)
+local stockKey = KEYS[1]
+-- 用户订单记录分片key(用户所在库存桶的位图分片)
+local shardKey = KEYS[2]
+-- 订单Stream key(可选，使用Redis Stream传输订单时传入，需要与库存桶位于同一节点)
+local streamKey = KEYS[3]
 -- 用户ID
 local userId = ARGV[1]
 -- 订单ID
 local orderId = ARGV[2]
 -- 优惠券ID
 local voucherId = ARGV[3]
+-- 用户在位图分片中的位偏移
+local offset = tonumber(ARGV[4])
+-- 秒杀时间窗口(毫秒时间戳，0表示不限制)
+local beginTime = tonumber(ARGV[5])
+local endTime = tonumber(ARGV[6])
+-- 用户订单记录的过期时间(毫秒时间戳，0表示不过期)
+local expireAt = tonumber(ARGV[7])
+-- 库存是否已经从其他桶借出
+local reserved = ARGV[8] == '1'
+
+-- 0. 以Redis服务器时间判断秒杀时间窗口，各个应用节点的时钟偏差不影响开始和结束
+if beginTime > 0 or endTime > 0 then
+    local time = redis.call('time')
+    local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+    if beginTime > 0 and now < beginTime then
+        -- 秒杀尚未开始
+        return 3
+    end
+    if endTime > 0 and now >= endTime then
+        -- 秒杀已经结束
+        return 4
+    end
+end
 
 -- 1. 判断用户是否重复下单
-if (redis.call('sismember', orderKey, userId) == 1) then
+if (redis.call('getbit', shardKey, offset) == 1) then
     -- 存在重复下单
     return 2
 end
 
--- 2. 从库存队列中取出一个库存
-local result = redis.call('lpop', queueKey)
-if not result then
-    -- 库存队列中没有库存，表示已经卖完
-    return 1
+-- 2. 扣减一个库存，根据key的类型识别库存存储策略
+if not reserved then
+    if (redis.call('type', stockKey).ok == 'string') then
+        -- 计数器策略：库存大于0时扣减
+        local stock = tonumber(redis.call('get', stockKey))
+        if (stock == nil or stock <= 0) then
+            return 1
+        end
+        redis.call('decr', stockKey)
+    elseif not redis.call('lpop', stockKey) then
+        -- 库存队列策略：本桶的库存已经取完
+        return 1
+    end
 end
 
--- 3. 添加用户订单记录
-redis.call('sadd', orderKey, userId)
-
--- 4. 不再使用Redis Stream发送消息，而是由应用程序处理
--- 删除相关缓存，确保缓存一致性
-local userVoucherCacheKey = 'cache:voucher:order:user:' .. userId .. ':voucher:' .. voucherId
-redis.call('del', userVoucherCacheKey)
+-- 3. 添加用户订单记录，位图分片与库存一起在优惠券结束后过期
+redis.call('setbit', shardKey, offset, 1)
+if expireAt > 0 then
+    redis.call('pexpireat', shardKey, expireAt)
+end
 
--- 删除优惠券相关缓存
-local voucherCacheKey = 'cache:voucher:' .. voucherId
-redis.call('del', voucherCacheKey)
+-- 4. 使用Redis Stream传输订单时，在脚本中原子写入订单消息，否则由应用程序发送到RabbitMQ
+if streamKey then
+    redis.call('xadd', streamKey, '*', 'userId', userId, 'voucherId', voucherId, 'id', orderId)
+end
 
 -- 返回成功
-return 0 
\ No newline at end of file
+return 0
@@ -0,0 +1,19 @@
+-- 从一个库存桶中借出一个库存(用户所在的库存桶已经取完时使用)
+-- 库存桶key
+local stockKey = KEYS[1]
+
+-- 根据key的类型识别库存存储策略
+if (redis.call('type', stockKey).ok == 'string') then
+    -- 计数器策略：库存大于0时扣减
+    local stock = tonumber(redis.call('get', stockKey))
+    if (stock == nil or stock <= 0) then
+        return 0
+    end
+    redis.call('decr', stockKey)
+    return 1
+end
+-- 库存队列策略：从库存队列中取出一个库存
+if redis.call('lpop', stockKey) then
+    return 1
+end
+return 0
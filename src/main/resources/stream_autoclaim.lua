@@ -0,0 +1,56 @@
+-- 认领消费组中空闲超时的待确认订单消息(XAUTOCLAIM)，并附带每条消息的投递次数
+-- Stream key
+local streamKey = KEYS[1]
+-- 消费组
+local group = ARGV[1]
+-- 认领消息的消费者
+local consumer = ARGV[2]
+-- 最小空闲时间（毫秒）
+local minIdle = ARGV[3]
+-- 扫描游标
+local cursor = ARGV[4]
+-- 单次认领数量
+local count = ARGV[5]
+
+-- 只取消息ID：Redis 7之前已被删除(XDEL/MAXLEN裁剪)但仍待确认的消息在完整返回中是nil，拿不到ID，
+-- 不确认的话会一直留在待确认列表中被反复认领
+local claimed = redis.call('xautoclaim', streamKey, group, consumer, minIdle, cursor, 'COUNT', count, 'JUSTID')
+
+-- 返回格式：下一个游标, 然后依次为 消息ID、用户ID、优惠券ID、订单ID、投递次数
+local result = { claimed[1] }
+local live = {}
+for _, id in ipairs(claimed[2]) do
+    if next(redis.call('xrange', streamKey, id, id)) == nil then
+        -- 消息已被删除，没有内容可以处理，直接确认
+        redis.call('xack', streamKey, group, id)
+    else
+        live[#live + 1] = id
+    end
+end
+if #live == 0 then
+    return result
+end
+
+-- JUSTID不增加投递次数，对仍然存在的消息再执行一次XCLAIM，投递次数与完整认领一致
+local entries = redis.call('xclaim', streamKey, group, consumer, 0, unpack(live))
+for _, entry in ipairs(entries) do
+    local id = entry and entry[1]
+    local fields = entry and entry[2]
+    if id and fields then
+        local values = {}
+        for i = 1, #fields, 2 do
+            values[fields[i]] = fields[i + 1]
+        end
+        local pending = redis.call('xpending', streamKey, group, id, id, 1)
+        local deliveries = 1
+        if pending[1] then
+            deliveries = pending[1][4]
+        end
+        result[#result + 1] = id
+        result[#result + 1] = values['userId'] or ''
+        result[#result + 1] = values['voucherId'] or ''
+        result[#result + 1] = values['id'] or ''
+        result[#result + 1] = deliveries
+    end
+end
+return result
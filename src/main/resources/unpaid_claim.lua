@@ -0,0 +1,21 @@
+-- 认领到期的未支付订单：把到期订单的score推迟到租约结束时间，只有一个节点能认领成功
+-- 订单取消提交后再由认领的节点ZREM；节点在提交前宕机时，租约过期后由补偿扫描重新认领
+-- 未支付订单ZSET key
+local unpaidKey = KEYS[1]
+-- score不超过该值的订单才算到期（毫秒时间戳）
+local dueAt = tonumber(ARGV[1])
+-- 租约结束时间（毫秒时间戳）
+local leaseUntil = ARGV[2]
+
+-- 返回认领成功的订单ID
+local claimed = {}
+for i = 3, #ARGV do
+    local orderId = ARGV[i]
+    local score = redis.call('zscore', unpaidKey, orderId)
+    -- 已被删除(已取消/已支付)或已被其他节点认领(score推迟到了未来)的订单跳过
+    if score and tonumber(score) <= dueAt then
+        redis.call('zadd', unpaidKey, 'XX', leaseUntil, orderId)
+        claimed[#claimed + 1] = orderId
+    end
+end
+return claimed
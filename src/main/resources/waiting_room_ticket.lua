@@ -0,0 +1,44 @@
+-- 领取排队号：同一用户重复领取时返回原来的排队号
+-- 用户排队号hash key
+local usersKey = KEYS[1]
+-- 排队序号key
+local seqKey = KEYS[2]
+-- 开始放行时间key(秒杀开始时间，由预热任务写入)
+local openKey = KEYS[3]
+-- 用户ID
+local userId = ARGV[1]
+-- 当前时间（毫秒）
+local now = tonumber(ARGV[2])
+-- 过期时间（秒）
+local ttl = ARGV[3]
+-- 秒杀开始时间（毫秒），0表示未知
+local beginTime = tonumber(ARGV[4])
+-- 排队记录的过期时间（毫秒时间戳），0表示未知
+local expireAt = tonumber(ARGV[5])
+
+local seq = redis.call('hget', usersKey, userId)
+if not seq then
+    seq = redis.call('incr', seqKey)
+    redis.call('hset', usersKey, userId, seq)
+end
+
+-- 预热任务没有写入时，从秒杀开始时间和第一个排队号领取时间中较晚的一个开始放行
+local openTime = redis.call('get', openKey)
+if not openTime then
+    openTime = math.max(beginTime, now)
+    redis.call('set', openKey, openTime)
+end
+
+if expireAt > 0 then
+    -- 与库存一起过期，秒杀期间不会因为无人领取而重置放行时间和序号
+    redis.call('pexpireat', usersKey, expireAt)
+    redis.call('pexpireat', seqKey, expireAt)
+    redis.call('pexpireat', openKey, expireAt)
+else
+    redis.call('expire', usersKey, ttl)
+    redis.call('expire', seqKey, ttl)
+    redis.call('expire', openKey, ttl)
+end
+
+-- 返回 排队序号, 开始放行时间
+return { tonumber(seq), tonumber(openTime) }
@@ -0,0 +1,90 @@
+import com.hmdp.entity.Shop;
+import com.hmdp.utils.RedisData;
+import com.hmdp.utils.codec.CacheCodec;
+import com.hmdp.utils.codec.CacheCodecFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 缓存值编解码压测：对比 hutool(原有JSONUtil实现)、json(Jackson)、smile(Jackson二进制) 的
+ * 编码、解码、逻辑过期解码耗时和编码后的大小
+ */
+@SpringBootTest
+public class CacheCodecBenchmarkTest {
+
+    private static final int WARMUP = 20000;
+    private static final int ITERATIONS = 200000;
+
+    @Resource
+    private List<CacheCodecFactory> factories;
+
+    @Test
+    void testCodecs() {
+        Shop shop = sampleShop();
+        RedisData redisData = new RedisData();
+        redisData.setData(shop);
+        redisData.setExpireTime(LocalDateTime.now().plusMinutes(30));
+
+        for (CacheCodecFactory factory : factories) {
+            CacheCodec<Shop> codec = factory.create(Shop.class);
+            byte[] bytes = codec.encode(shop);
+            byte[] logicalBytes = codec.encodeLogical(redisData);
+            assertEquals(shop.getName(), codec.decode(bytes).getName());
+            assertEquals(shop.getName(), ((Shop) codec.decodeLogical(logicalBytes).getData()).getName());
+
+            // 预热
+            for (int i = 0; i < WARMUP; i++) {
+                codec.decode(codec.encode(shop));
+                codec.decodeLogical(logicalBytes);
+            }
+
+            long begin = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                codec.encode(shop);
+            }
+            long encodeNanos = System.nanoTime() - begin;
+
+            begin = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                codec.decode(bytes);
+            }
+            long decodeNanos = System.nanoTime() - begin;
+
+            begin = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                codec.decodeLogical(logicalBytes);
+            }
+            long logicalNanos = System.nanoTime() - begin;
+
+            System.out.println(factory.getName() + ": size = " + bytes.length + "B, logical size = "
+                    + logicalBytes.length + "B, encode = " + encodeNanos / ITERATIONS + "ns/op, decode = "
+                    + decodeNanos / ITERATIONS + "ns/op, logical decode = " + logicalNanos / ITERATIONS + "ns/op");
+        }
+    }
+
+    private Shop sampleShop() {
+        Shop shop = new Shop();
+        shop.setId(1L);
+        shop.setName("103茶餐厅");
+        shop.setTypeId(1L);
+        shop.setImages("https://qcloud.dpfile.com/pc/jiclIsCKmOI2arxKN1Uf0Hx3PucIJH8q0QSz-Z8llzcN56-_QiKuOvyio1OOxsRtFoXqu0G3iT2T27qat3WhLVEuLYk00OmSS1IdNpm8K8sG4JN9RIm2mTKcbLtc2o2vfCF2ubeXzk49OsGrXt_KYDCngOyCwZK-s3fqawWswzk.jpg");
+        shop.setArea("大关");
+        shop.setAddress("金华路锦昌文华苑29号");
+        shop.setX(120.149192);
+        shop.setY(30.316078);
+        shop.setAvgPrice(80L);
+        shop.setSold(4215);
+        shop.setComments(3035);
+        shop.setScore(37);
+        shop.setOpenHours("10:00-22:00");
+        shop.setCreateTime(LocalDateTime.now());
+        shop.setUpdateTime(LocalDateTime.now());
+        return shop;
+    }
+}
@@ -0,0 +1,93 @@
+import com.hmdp.utils.stock.CounterStockStrategy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 订单传输方式压测：对比 秒杀脚本 + RabbitMQ发送(等待发布确认) 和 秒杀脚本内写入Redis Stream 的吞吐量
+ */
+@SpringBootTest
+public class OrderTransportBenchmarkTest {
+
+    private static final String QUEUE_KEY = "seckill:queue:bench";
+    private static final String ORDER_KEY = "seckill:order:bench";
+    private static final String STREAM_KEY = "stream.orders.bench";
+    private static final int ORDERS = 20000;
+
+    private static final DefaultRedisScript<Long> QUEUE_SECKILL_SCRIPT;
+
+    static {
+        QUEUE_SECKILL_SCRIPT = new DefaultRedisScript<>();
+        QUEUE_SECKILL_SCRIPT.setLocation(new ClassPathResource("queue_seckill.lua"));
+        QUEUE_SECKILL_SCRIPT.setResultType(Long.class);
+    }
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private RabbitTemplate rabbitTemplate;
+    @Resource
+    private AmqpAdmin amqpAdmin;
+    @Resource
+    private CounterStockStrategy counterStockStrategy;
+
+    @AfterEach
+    void cleanUp() {
+        stringRedisTemplate.delete(Arrays.asList(QUEUE_KEY, ORDER_KEY, STREAM_KEY));
+    }
+
+    @Test
+    void testRabbitTransport() throws Exception {
+        counterStockStrategy.load(QUEUE_KEY, ORDERS);
+        // 发送到临时队列，避免压测消息被订单消费者处理
+        String queue = amqpAdmin.declareQueue().getName();
+        try {
+            List<CorrelationData> confirms = new ArrayList<>(ORDERS);
+            long begin = System.currentTimeMillis();
+            for (int i = 0; i < ORDERS; i++) {
+                stringRedisTemplate.execute(QUEUE_SECKILL_SCRIPT, Arrays.asList(QUEUE_KEY, ORDER_KEY),
+                        String.valueOf(i), String.valueOf(i), "bench");
+                CorrelationData correlationData = new CorrelationData(String.valueOf(i));
+                rabbitTemplate.convertAndSend("", queue, String.valueOf(i), correlationData);
+                confirms.add(correlationData);
+            }
+            for (CorrelationData correlationData : confirms) {
+                correlationData.getFuture().get(10, TimeUnit.SECONDS);
+            }
+            long end = System.currentTimeMillis();
+            report("rabbitmq", end - begin);
+        } finally {
+            amqpAdmin.deleteQueue(queue);
+        }
+    }
+
+    @Test
+    void testStreamTransport() {
+        counterStockStrategy.load(QUEUE_KEY, ORDERS);
+        long begin = System.currentTimeMillis();
+        for (int i = 0; i < ORDERS; i++) {
+            stringRedisTemplate.execute(QUEUE_SECKILL_SCRIPT, Arrays.asList(QUEUE_KEY, ORDER_KEY, STREAM_KEY),
+                    String.valueOf(i), String.valueOf(i), "bench");
+        }
+        long end = System.currentTimeMillis();
+        report("stream", end - begin);
+        System.out.println("stream length = " + stringRedisTemplate.opsForStream().size(STREAM_KEY));
+    }
+
+    private void report(String name, long millis) {
+        System.out.println(name + ": orders = " + ORDERS + ", time = " + millis + "ms, throughput = "
+                + (ORDERS * 1000L / Math.max(1, millis)) + " orders/s");
+    }
+}
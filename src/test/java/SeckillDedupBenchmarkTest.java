@@ -0,0 +1,118 @@
+import com.hmdp.utils.stock.CounterStockStrategy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import javax.annotation.Resource;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * 重复下单记录压测：对比 用户ID集合(SET) 和 分片位图 的内存占用与秒杀脚本耗时
+ */
+@SpringBootTest
+public class SeckillDedupBenchmarkTest {
+
+    private static final String QUEUE_KEY = "seckill:queue:bench";
+    private static final String ORDER_KEY = "seckill:order:bench";
+    private static final int USERS = 1000000;
+    private static final int SCRIPT_CALLS = 20000;
+    private static final int SHARD_SIZE = 1 << 20;
+
+    private static final DefaultRedisScript<Long> MEMORY_USAGE_SCRIPT =
+            new DefaultRedisScript<>("return redis.call('memory', 'usage', KEYS[1])", Long.class);
+
+    /**
+     * 改造前的秒杀脚本：用SET记录下单用户
+     */
+    private static final DefaultRedisScript<Long> SET_SECKILL_SCRIPT = new DefaultRedisScript<>(
+            "if (redis.call('sismember', KEYS[2], ARGV[1]) == 1) then return 2 end " +
+            "if (tonumber(redis.call('get', KEYS[1])) <= 0) then return 1 end " +
+            "redis.call('decr', KEYS[1]) " +
+            "redis.call('sadd', KEYS[2], ARGV[1]) " +
+            "return 0", Long.class);
+
+    private static final DefaultRedisScript<Long> QUEUE_SECKILL_SCRIPT;
+
+    static {
+        QUEUE_SECKILL_SCRIPT = new DefaultRedisScript<>();
+        QUEUE_SECKILL_SCRIPT.setLocation(new ClassPathResource("queue_seckill.lua"));
+        QUEUE_SECKILL_SCRIPT.setResultType(Long.class);
+    }
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private CounterStockStrategy counterStockStrategy;
+
+    @AfterEach
+    void cleanUp() {
+        stringRedisTemplate.delete(QUEUE_KEY);
+        stringRedisTemplate.delete(ORDER_KEY);
+        Set<String> shards = stringRedisTemplate.keys(ORDER_KEY + ":*");
+        if (shards != null && !shards.isEmpty()) {
+            stringRedisTemplate.delete(shards);
+        }
+    }
+
+    @Test
+    void testSetMemory() {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (int i = 1; i <= USERS; i++) {
+                conn.sAdd(ORDER_KEY, String.valueOf(i));
+            }
+            return null;
+        });
+        System.out.println("set: users = " + USERS + ", memory = " + memoryUsage(ORDER_KEY) + " bytes");
+    }
+
+    @Test
+    void testBitmapMemory() {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (int i = 1; i <= USERS; i++) {
+                conn.setBit(ORDER_KEY + ":" + (i / SHARD_SIZE), i % SHARD_SIZE, true);
+            }
+            return null;
+        });
+        long memory = 0;
+        for (int shard = 0; shard <= USERS / SHARD_SIZE; shard++) {
+            memory += memoryUsage(ORDER_KEY + ":" + shard);
+        }
+        System.out.println("bitmap: users = " + USERS + ", memory = " + memory + " bytes");
+    }
+
+    @Test
+    void testSetScriptLatency() {
+        benchmarkScript("set", SET_SECKILL_SCRIPT);
+    }
+
+    @Test
+    void testBitmapScriptLatency() {
+        benchmarkScript("bitmap", QUEUE_SECKILL_SCRIPT);
+    }
+
+    private void benchmarkScript(String name, DefaultRedisScript<Long> script) {
+        counterStockStrategy.load(QUEUE_KEY, SCRIPT_CALLS);
+        long begin = System.nanoTime();
+        for (int i = 1; i <= SCRIPT_CALLS; i++) {
+            stringRedisTemplate.execute(script, Arrays.asList(QUEUE_KEY, ORDER_KEY),
+                    String.valueOf(i), String.valueOf(i), "bench");
+        }
+        long end = System.nanoTime();
+        System.out.println(name + " script: calls = " + SCRIPT_CALLS + ", avg = "
+                + (end - begin) / SCRIPT_CALLS / 1000 + "us");
+    }
+
+    private long memoryUsage(String key) {
+        Long memory = stringRedisTemplate.execute(MEMORY_USAGE_SCRIPT, Collections.singletonList(key));
+        return memory == null ? 0 : memory;
+    }
+}
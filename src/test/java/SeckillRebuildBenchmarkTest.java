@@ -0,0 +1,71 @@
+import com.hmdp.utils.SeckillOrderRecordWriter;
+import com.hmdp.utils.stock.StockLayout;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import javax.annotation.Resource;
+import java.util.Set;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 秒杀用户订单记录重建压测：对比 逐个用户pipeline SETBIT 和 内存拼位图后批量合并 的耗时
+ */
+@SpringBootTest
+public class SeckillRebuildBenchmarkTest {
+
+    private static final Long VOUCHER_ID = 999999999L;
+    private static final String ORDER_KEY = StockLayout.orderKeyPrefix(VOUCHER_ID, 0);
+    private static final int ORDERS = 1000000;
+    private static final int PIPELINE_SIZE = 10000;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private SeckillOrderRecordWriter seckillOrderRecordWriter;
+
+    @AfterEach
+    void cleanUp() {
+        Set<String> shards = stringRedisTemplate.keys(ORDER_KEY + "*");
+        if (shards != null && !shards.isEmpty()) {
+            stringRedisTemplate.delete(shards);
+        }
+    }
+
+    @Test
+    void testPipelinedSetBit() {
+        long begin = System.currentTimeMillis();
+        for (long from = 0; from < ORDERS; from += PIPELINE_SIZE) {
+            long start = from;
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (long userId = start; userId < Math.min(start + PIPELINE_SIZE, ORDERS); userId++) {
+                    conn.setBit(ORDER_KEY + userId / SeckillOrderRecordWriter.SHARD_SIZE,
+                            userId % SeckillOrderRecordWriter.SHARD_SIZE, true);
+                }
+                return null;
+            });
+        }
+        report("pipelined-setbit", System.currentTimeMillis() - begin);
+    }
+
+    @Test
+    void testBitmapWriter() {
+        long begin = System.currentTimeMillis();
+        long count = seckillOrderRecordWriter.write(VOUCHER_ID, 1, LongStream.range(0, ORDERS).iterator(), -1);
+        report("bitmap-writer", System.currentTimeMillis() - begin);
+        assertTrue(count == ORDERS);
+        assertTrue(stringRedisTemplate.opsForValue().getBit(ORDER_KEY + "0", 12345));
+        assertTrue(!stringRedisTemplate.opsForValue().getBit(ORDER_KEY + "0", ORDERS + 1));
+    }
+
+    private void report(String name, long millis) {
+        System.out.println(name + ": orders = " + ORDERS + ", time = " + millis + "ms, rate = "
+                + ORDERS * 1000L / Math.max(1, millis) + "/s");
+    }
+}
@@ -0,0 +1,69 @@
+import com.hmdp.utils.stock.CounterStockStrategy;
+import com.hmdp.utils.stock.ListStockStrategy;
+import com.hmdp.utils.stock.StockStrategy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import javax.annotation.Resource;
+import java.util.Collections;
+
+/**
+ * 库存存储策略压测：对比发布耗时和Redis内存占用
+ */
+@SpringBootTest
+public class StockBenchmarkTest {
+
+    private static final String BENCH_KEY = "seckill:queue:bench";
+    private static final int STOCK = 100000;
+
+    private static final DefaultRedisScript<Long> MEMORY_USAGE_SCRIPT =
+            new DefaultRedisScript<>("return redis.call('memory', 'usage', KEYS[1])", Long.class);
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private ListStockStrategy listStockStrategy;
+    @Resource
+    private CounterStockStrategy counterStockStrategy;
+
+    @AfterEach
+    void cleanUp() {
+        stringRedisTemplate.delete(BENCH_KEY);
+    }
+
+    @Test
+    void testRightPushOneByOne() {
+        stringRedisTemplate.delete(BENCH_KEY);
+        long begin = System.currentTimeMillis();
+        for (int i = 0; i < STOCK; i++) {
+            stringRedisTemplate.opsForList().rightPush(BENCH_KEY, "1");
+        }
+        long end = System.currentTimeMillis();
+        report("rpush-one-by-one", end - begin);
+    }
+
+    @Test
+    void testListStrategy() {
+        benchmark(listStockStrategy);
+    }
+
+    @Test
+    void testCounterStrategy() {
+        benchmark(counterStockStrategy);
+    }
+
+    private void benchmark(StockStrategy strategy) {
+        long begin = System.currentTimeMillis();
+        strategy.load(BENCH_KEY, STOCK);
+        long end = System.currentTimeMillis();
+        report(strategy.getName(), end - begin);
+    }
+
+    private void report(String name, long millis) {
+        Long memory = stringRedisTemplate.execute(MEMORY_USAGE_SCRIPT, Collections.singletonList(BENCH_KEY));
+        System.out.println(name + ": stock = " + STOCK + ", time = " + millis + "ms, memory = " + memory + " bytes");
+    }
+}